@@ -0,0 +1,78 @@
+package plc.interpreter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures calls to the standard library functions with each engine. The
+ * GC profiler is enabled in the build, so {@code gc.alloc.rate.norm} reports
+ * the allocation per call, which should be close to zero for everything but
+ * the results themselves.
+ *
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InterpreterBenchmark {
+
+    @Param({"TREE", "COMPILED", "BYTECODE", "JIT", "TRAMPOLINE"})
+    public Interpreter.Engine engine;
+
+    private Interpreter interpreter;
+    private Ast arithmetic;
+    private Ast comparison;
+    private Ast loop;
+    private Ast loopBody;
+
+    @Setup
+    public void setup() {
+        interpreter = new Interpreter(new PrintWriter(new StringWriter()), new plc.interpreter.Scope(null), engine);
+        interpreter.scope.define("x", Numbers.valueOf(7));
+        arithmetic = parse("(+ x (- x 1) (* x 2) (/ x 2))");
+        comparison = parse("(and (< 1 x 10) (>= x x) (not (> 1 x)))");
+        loop = parse("(do (define i 0) (while (< i 100) (set! i (+ i 1))) i)");
+        loopBody = parse("(do (define i 0) (while (< i 100) (do (set! i (+ i 1)))) i)");
+    }
+
+    @Benchmark
+    public Object arithmetic() {
+        return interpreter.eval(arithmetic);
+    }
+
+    @Benchmark
+    public Object comparison() {
+        return interpreter.eval(comparison);
+    }
+
+    @Benchmark
+    public Object loop() {
+        return interpreter.eval(loop);
+    }
+
+    /**
+     * The same loop with its body in a {@code do}, which evaluates the body
+     * in a new scope on every iteration.
+     */
+    @Benchmark
+    public Object loopBody() {
+        return interpreter.eval(loopBody);
+    }
+
+    private static Ast parse(String input) {
+        Ast ast = ((Ast.Term) Parser.parse(input)).getArgs().get(0);
+        Resolver.resolve(ast);
+        return ast;
+    }
+
+}
@@ -0,0 +1,63 @@
+package plc.interpreter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures lexer throughput on a generated Whisp source. The {@code regex}
+ * benchmark lexes the same source with {@link RegexLexer}, a copy of the
+ * previous regex-driven lexer.
+ *
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LexerBenchmark {
+
+    @Param({"1000", "100000"})
+    public int forms;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = generate(forms);
+    }
+
+    @Benchmark
+    public List<Token> lex() {
+        return Lexer.lex(source);
+    }
+
+    @Benchmark
+    public List<Token> regex() {
+        return RegexLexer.lex(source);
+    }
+
+    /**
+     * Generates a source with the given number of top level forms, mixing
+     * identifiers, numbers, strings and nesting in roughly the proportions of
+     * our generated scripts.
+     */
+    static String generate(int forms) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < forms; i++) {
+            builder.append("(do (define counter-").append(i).append(" ").append(i).append(".5)\n")
+                    .append("    (while (< counter-").append(i).append(" 100)\n")
+                    .append("        (set! counter-").append(i).append(" (+ counter-").append(i).append(" -1 2)))\n")
+                    .append("    (print \"value of counter\" counter-").append(i).append("))\n");
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,185 @@
+package plc.interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A copy of the lexer before its character classes were replaced by lookup
+ * tables, which matches each character against a regex in {@link
+ * #peek(String...)} and {@link #match(String...)}. It's only kept as the
+ * baseline for {@link LexerBenchmark}, so the code is unchanged apart from
+ * the class name.
+ */
+final class RegexLexer {
+
+    private final CharStream chars;
+
+    private RegexLexer(String input) {
+        chars = new CharStream(input);
+    }
+
+    static List<Token> lex(String input) throws ParseException {
+        return new RegexLexer(input).lex();
+    }
+
+    private List<Token> lex() throws ParseException {
+
+        List<Token> tList = new ArrayList<>();
+        while (chars.has(0)) {
+            if (!match("[ \n\r\t]")) {
+//            if(!match("\n","\r","\t"," ")){
+                tList.add(lexToken());
+            } else {
+                chars.reset();
+            }
+        }
+        return tList;
+
+    }
+
+
+    // should use peek here
+    private Token lexToken() throws ParseException {
+
+        if(peek("[0-9]") || peek("[+-]","[0-9]") || peek("[.]")){
+            return lexNumber();
+        } else if (match("[A-Za-z_+\\-*/:!?<>=]") || match("[.]", "[A-Za-z0-9_+\\-*/.:!?<>=]")) {
+            return lexIdentifier();
+        } else if (peek("\"")) {
+            return lexString();
+        } else {
+            return lexOperator();
+        }
+        // exception needed?
+
+    }
+
+    private Token lexNumber() throws ParseException{
+
+        if(match("[+-]","[0-9]")) ;
+        else if (match("[0-9]")) ;
+        else throw new ParseException("starts with decimal", chars.index);
+
+        int decimal = 0;
+        while (peek("[.]","[0-9]") || match("[0-9]")){
+            if(match("[.]","[0-9]")){
+                decimal++;
+            }
+        }
+        if(decimal>1){
+            throw new ParseException("more than one decimal", chars.index);
+        }
+        return chars.emit(Token.Type.NUMBER);
+    }
+
+    private Token lexIdentifier() {
+        while (match("[A-Za-z0-9_+\\-*/.:!?<>=]")) ;
+        return chars.emit(Token.Type.IDENTIFIER);
+        // need exception error?
+    }
+
+    //needs to be able to read all chars, not just listed
+    private Token lexString() throws ParseException {
+        match("\"");
+        if(chars.input.length()==2){ // find better soln
+            return chars.emit(Token.Type.STRING);
+        }
+        while (match("[A-Za-z,._;/!@#$%^&()~` 0-9]") || match("[\\\\]","[bnrt]")) ;
+        if (!match("\"")) {
+            throw new ParseException("no terminating end quote", chars.index);
+        }
+        return chars.emit(Token.Type.STRING);
+    }
+
+    private Token lexOperator() throws ParseException {
+        chars.advance();
+        return chars.emit(Token.Type.OPERATOR);
+    }
+
+    /**
+     * Returns true if the next sequence of characters match the given patterns,
+     * which should be a regex. For example, {@code peek("a", "b", "c")} would
+     * return true for the sequence {@code 'a', 'b', 'c'}
+     */
+    private boolean peek(String... patterns) {
+        for (int i = 0; i < patterns.length; i++) {
+            if (!chars.has(i) || !String.valueOf(chars.get(i)).matches(patterns[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true in the same way as peek, but also advances the CharStream to
+     * if the characters matched.
+     */
+    private boolean match(String... patterns) {
+        boolean check = false;
+        while (peek(patterns)) {
+            chars.advance();
+            check = true;
+        }
+        return check;
+
+    }
+
+    /**
+     * This is basically a sequence of characters. The index is used to maintain
+     * where in the input string the lexer currently is, and the builder
+     * accumulates characters into the literal value for the next token.
+     */
+    private static final class CharStream {
+
+        private final String input;
+        private int index = 0;
+        private int length = 0;
+
+        private CharStream(String input) {
+            this.input = input;
+        }
+
+        /**
+         * Returns true if there is a character at index + offset.
+         */
+        public boolean has(int offset) {
+            return index + offset < input.length();
+        }
+
+        /**
+         * Gets the character at index + offset.
+         */
+        public char get(int offset) {
+            return input.charAt(index + offset);
+        }
+
+        /**
+         * Advances to the next character, incrementing the current index and
+         * length of the literal being built.
+         */
+        public void advance() {
+            index++;
+            length++;
+        }
+
+        /**
+         * Resets the length to zero, skipping any consumed characters.
+         */
+        public void reset() {
+            length = 0;
+        }
+
+        /**
+         * Returns a token of the given type with the built literal and resets
+         * the length to zero. The index of the token should be the
+         * <em>starting</em> index.
+         */
+        public Token emit(Token.Type type) {
+            int start = index - length;
+            reset(); //
+            return new Token(type, input.substring(start, index), start);
+        }
+    }
+
+}
+
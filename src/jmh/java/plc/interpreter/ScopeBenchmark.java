@@ -0,0 +1,88 @@
+package plc.interpreter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways a scope can store its variables, slots with a {@code
+ * HashMap} index, a persistent trie and a {@code ConcurrentHashMap}, on
+ * global scopes of different sizes. The {@code copy} benchmark forks the
+ * trie, and otherwise defines every variable again in a new scope, which is
+ * what copying one takes.
+ *
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScopeBenchmark {
+
+    public enum Backend { SLOTS, HAMT, CONCURRENT }
+
+    @Param({"10", "1000", "100000"})
+    public int bindings;
+
+    @Param({"SLOTS", "HAMT", "CONCURRENT"})
+    public Backend backend;
+
+    private plc.interpreter.Scope scope;
+    private Symbol[] names;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        scope = create();
+        names = new Symbol[bindings];
+        for (int i = 0; i < bindings; i++) {
+            names[i] = Symbol.of("global-" + i);
+            scope.define(names[i], BigDecimal.valueOf(i));
+        }
+    }
+
+    @Benchmark
+    public Object lookup() {
+        return scope.lookup(name());
+    }
+
+    @Benchmark
+    public void set() {
+        scope.set(name(), BigDecimal.ONE);
+    }
+
+    @Benchmark
+    public plc.interpreter.Scope copy() {
+        if (backend == Backend.HAMT) {
+            return scope.fork();
+        }
+        plc.interpreter.Scope copy = create();
+        for (Symbol name : names) {
+            copy.define(name, scope.lookup(name));
+        }
+        return copy;
+    }
+
+    private plc.interpreter.Scope create() {
+        return backend == Backend.HAMT ? plc.interpreter.Scope.persistent(null)
+                : backend == Backend.CONCURRENT ? plc.interpreter.Scope.concurrent(null)
+                : new plc.interpreter.Scope(null);
+    }
+
+    /**
+     * Returns the next name in turn, so lookups spread over the whole scope.
+     */
+    private Symbol name() {
+        Symbol name = names[next];
+        next = next + 1 == names.length ? 0 : next + 1;
+        return name;
+    }
+
+}
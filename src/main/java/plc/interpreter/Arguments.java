@@ -0,0 +1,69 @@
+package plc.interpreter;
+
+import java.util.Arrays;
+
+/**
+ * A stack of evaluated arguments, which the standard library functions use
+ * instead of collecting their arguments into a new list on every call. Each
+ * {@link Interpreter} has its own stack, as only one thread evaluates with
+ * an interpreter at a time, so a pooled interpreter keeps its stack when it
+ * runs on another thread. A function reserves slots for its arguments, evaluates them into
+ * those slots (any functions called while evaluating them reserve slots above
+ * them) and releases the slots when it returns, including when an exception
+ * is thrown:
+ *
+ * <pre>{@code
+ * Arguments arguments = interpreter.arguments;
+ * int base = arguments.reserve(args.size());
+ * try {
+ *     ...
+ * } finally {
+ *     arguments.release(base);
+ * }
+ * }</pre>
+ */
+final class Arguments {
+
+    private Object[] values = new Object[64];
+    private int top = 0;
+
+    Arguments() {}
+
+    /**
+     * Reserves {@code count} slots, returning the index of the first.
+     */
+    int reserve(int count) {
+        int base = top;
+        if (base + count > values.length) {
+            values = Arrays.copyOf(values, Math.max(2 * values.length, base + count));
+        }
+        top = base + count;
+        return base;
+    }
+
+    /**
+     * Releases the slots from {@code base} up, clearing them so the values
+     * can be collected.
+     */
+    void release(int base) {
+        Arrays.fill(values, base, top, null);
+        top = base;
+    }
+
+    Object get(int index) {
+        return values[index];
+    }
+
+    void set(int index, Object value) {
+        values[index] = value;
+    }
+
+    /**
+     * Returns the underlying array, which is only valid until the next
+     * reservation.
+     */
+    Object[] array() {
+        return values;
+    }
+
+}
@@ -19,17 +19,46 @@ import java.util.stream.Collectors;
  */
 public class Ast {
 
+    /**
+     * The lexical address of a name, set by the {@link Resolver}. This is the
+     * number of scopes up from where the name is used and the slot in that
+     * scope, or {@link #UNRESOLVED} if it has to be looked up by name.
+     */
+    static final int UNRESOLVED = -1;
+
+    /**
+     * The compiled form of this AST from the last engine that compiled it,
+     * either a {@link Compiler.Node} or {@link Bytecode}.
+     */
+    Object compiled;
+
     public static final class Term extends Ast {
 
-        private final String name;
+        private final Symbol name;
         private final List<Ast> args;
+        int depth = UNRESOLVED;
+        int slot = UNRESOLVED;
+
+        /**
+         * The inline cache for the function this term calls, see {@link
+         * Interpreter#lookupFunction(Ast.Term, Scope)}.
+         */
+        Interpreter.CallCache cache;
 
         public Term(String name, List<Ast> args) {
+            this(Symbol.of(name), args);
+        }
+
+        public Term(Symbol name, List<Ast> args) {
             this.name = name;
             this.args = args;
         }
 
         public String getName() {
+            return name.getName();
+        }
+
+        public Symbol getSymbol() {
             return name;
         }
 
@@ -39,7 +68,7 @@ public class Ast {
 
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Term && name.equals(((Term) obj).name) && args.equals(((Term) obj).args);
+            return obj instanceof Term && name == ((Term) obj).name && args.equals(((Term) obj).args);
         }
 
         @Override
@@ -51,24 +80,34 @@ public class Ast {
 
     public static final class Identifier extends Ast {
 
-        private final String name;
+        private final Symbol name;
+        int depth = UNRESOLVED;
+        int slot = UNRESOLVED;
 
         public Identifier(String name) {
+            this(Symbol.of(name));
+        }
+
+        public Identifier(Symbol name) {
             this.name = name;
         }
 
         public String getName() {
+            return name.getName();
+        }
+
+        public Symbol getSymbol() {
             return name;
         }
 
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Identifier && name.equals(((Identifier) obj).name);
+            return obj instanceof Identifier && name == ((Identifier) obj).name;
         }
 
         @Override
         public String toString() {
-            return name;
+            return name.getName();
         }
 
     }
@@ -0,0 +1,58 @@
+package plc.interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CharSequence} view of a {@link ByteBuffer}, such as a memory mapped
+ * file, which decodes each byte as a single ISO-8859-1 character. Every
+ * character in the Whisp grammar is ASCII, so this lexes any valid source the
+ * same as decoding it first; other bytes are simply lexed as operators.
+ *
+ * Characters are read straight from the buffer, and a string is only created
+ * by {@link #toString()}, which tokens call lazily for their literal.
+ */
+final class ByteCharSequence implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int end;
+
+    ByteCharSequence(ByteBuffer buffer) {
+        this(buffer, 0, buffer.limit());
+    }
+
+    private ByteCharSequence(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(start + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ") of " + length());
+        }
+        return new ByteCharSequence(buffer, this.start + start, this.start + end);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+}
@@ -0,0 +1,288 @@
+package plc.interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compiled program for the {@link VirtualMachine}, used by {@link
+ * Interpreter.Engine#BYTECODE}. The code is a flat array of instructions,
+ * each an opcode followed by its operands, which operate on a stack of values.
+ * Operands referring to symbols, ASTs or values are indices into the constant
+ * pool.
+ *
+ * The standard library functions with dedicated instructions are compiled the
+ * same way as in the {@link Compiler}: the instructions are preceded by a
+ * {@link #GUARD} which checks the term's name still refers to the standard
+ * library function, and otherwise jumps to a {@link #CALL} of whatever it
+ * refers to now. Terms without dedicated instructions are always a call.
+ */
+final class Bytecode {
+
+    /** {@code CONSTANT index}: pushes the constant. */
+    static final int CONSTANT = 0;
+    /** {@code LOAD index}: pushes the variable named by the identifier constant. */
+    static final int LOAD = 1;
+    /** {@code POP}: discards the top of the stack. */
+    static final int POP = 2;
+    /** {@code NUMBER}: checks the top of the stack is a number. */
+    static final int NUMBER = 3;
+    /** {@code ADD count}: pops and adds the numbers. */
+    static final int ADD = 4;
+    /** {@code SUBTRACT count}: pops and subtracts the numbers, negating one. */
+    static final int SUBTRACT = 5;
+    /** {@code MULTIPLY count}: pops and multiplies the values, which must be numbers. */
+    static final int MULTIPLY = 6;
+    /** {@code DIVIDE count}: pops and divides the numbers, inverting one. */
+    static final int DIVIDE = 7;
+    /** {@code COMPARE operator count}: pops and compares the values. */
+    static final int COMPARE = 8;
+    /** {@code NOT}: negates the boolean on top of the stack. */
+    static final int NOT = 9;
+    /** {@code JUMP target}: jumps to the target. */
+    static final int JUMP = 10;
+    /** {@code JUMP_IF target value}: pops a boolean, jumping if it is the value. */
+    static final int JUMP_IF = 11;
+    /** {@code ENTER}: enters a new scope. */
+    static final int ENTER = 12;
+    /** {@code EXIT}: returns to the parent scope. */
+    static final int EXIT = 13;
+    /** {@code DEFINE index}: pops a value and defines the symbol constant. */
+    static final int DEFINE = 14;
+    /** {@code SET index}: pops a value and sets the symbol constant. */
+    static final int SET = 15;
+    /** {@code GUARD index target}: jumps unless the guard constant holds. */
+    static final int GUARD = 16;
+    /** {@code CALL index}: calls the function for the term constant with its AST arguments. */
+    static final int CALL = 17;
+
+    static final int LESS = 0, LESS_EQUAL = 1, GREATER = 2, GREATER_EQUAL = 3;
+
+    private static final Symbol ADD_NAME = Symbol.of("+");
+    private static final Symbol SUBTRACT_NAME = Symbol.of("-");
+    private static final Symbol MULTIPLY_NAME = Symbol.of("*");
+    private static final Symbol DIVIDE_NAME = Symbol.of("/");
+    private static final Symbol LESS_NAME = Symbol.of("<");
+    private static final Symbol LESS_EQUAL_NAME = Symbol.of("<=");
+    private static final Symbol GREATER_NAME = Symbol.of(">");
+    private static final Symbol GREATER_EQUAL_NAME = Symbol.of(">=");
+    private static final Symbol NOT_NAME = Symbol.of("not");
+    private static final Symbol AND_NAME = Symbol.of("and");
+    private static final Symbol OR_NAME = Symbol.of("or");
+    private static final Symbol WHILE_NAME = Symbol.of("while");
+    private static final Symbol DO_NAME = Symbol.of("do");
+    private static final Symbol DEFINE_NAME = Symbol.of("define");
+    private static final Symbol SET_NAME = Symbol.of("set!");
+
+    final Interpreter interpreter;
+    final int[] code;
+    final Object[] constants;
+    final int maxStack;
+
+    private Bytecode(Interpreter interpreter, int[] code, Object[] constants, int maxStack) {
+        this.interpreter = interpreter;
+        this.code = code;
+        this.constants = constants;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * The constant for a {@link #GUARD}, which holds if looking up the term's
+     * name finds the given standard library function.
+     */
+    static final class Guard {
+
+        final Ast.Term term;
+        final Object builtin;
+
+        private Guard(Ast.Term term, Object builtin) {
+            this.term = term;
+            this.builtin = builtin;
+        }
+
+    }
+
+    /**
+     * Returns the bytecode for the AST, which is cached on the AST.
+     */
+    static Bytecode compile(Interpreter interpreter, Ast ast) {
+        if (ast.compiled instanceof Bytecode && ((Bytecode) ast.compiled).interpreter == interpreter) {
+            return (Bytecode) ast.compiled;
+        }
+        Assembler assembler = new Assembler(interpreter);
+        assembler.compile(ast);
+        Bytecode bytecode = assembler.finish();
+        ast.compiled = bytecode;
+        return bytecode;
+    }
+
+    private static final class Assembler {
+
+        private final Interpreter interpreter;
+        private int[] code = new int[64];
+        private int size = 0;
+        private final List<Object> constants = new ArrayList<>();
+        private int stack = 0;
+        private int maxStack = 0;
+
+        private Assembler(Interpreter interpreter) {
+            this.interpreter = interpreter;
+        }
+
+        private Bytecode finish() {
+            return new Bytecode(interpreter, Arrays.copyOf(code, size), constants.toArray(), maxStack);
+        }
+
+        private void compile(Ast ast) {
+            if (ast instanceof Ast.Term) {
+                compile((Ast.Term) ast);
+            } else if (ast instanceof Ast.Identifier) {
+                emit(LOAD, constant(ast));
+                push(1);
+            } else if (ast instanceof Ast.NumberLiteral) {
+                emit(CONSTANT, constant(((Ast.NumberLiteral) ast).getValue()));
+                push(1);
+            } else if (ast instanceof Ast.StringLiteral) {
+                emit(CONSTANT, constant(((Ast.StringLiteral) ast).getValue()));
+                push(1);
+            } else {
+                throw new AssertionError(ast.getClass());
+            }
+        }
+
+        private void compile(Ast.Term ast) {
+            Object builtin = interpreter.getBuiltin(ast.getSymbol());
+            if (builtin == null || !isIntrinsic(ast.getSymbol(), ast.getArgs())) {
+                emit(CALL, constant(ast));
+                push(1);
+                return;
+            }
+            emit(GUARD, constant(new Guard(ast, builtin)), -1);
+            int guard = size - 1;
+            int start = stack;
+            compileIntrinsic(ast.getSymbol(), ast.getArgs());
+            emit(JUMP, -1);
+            int jump = size - 1;
+            code[guard] = size;
+            stack = start;
+            emit(CALL, constant(ast));
+            push(1);
+            code[jump] = size;
+        }
+
+        /**
+         * Returns true if the function has dedicated instructions for these
+         * arguments, which mirrors {@link Compiler}.
+         */
+        private static boolean isIntrinsic(Symbol name, List<Ast> args) {
+            return name == ADD_NAME || name == MULTIPLY_NAME
+                    || (name == SUBTRACT_NAME || name == DIVIDE_NAME) && !args.isEmpty()
+                    || name == LESS_NAME || name == LESS_EQUAL_NAME || name == GREATER_NAME || name == GREATER_EQUAL_NAME
+                    || name == NOT_NAME && args.size() == 1
+                    || name == AND_NAME || name == OR_NAME
+                    || name == WHILE_NAME && args.size() == 2
+                    || name == DO_NAME
+                    || (name == DEFINE_NAME || name == SET_NAME) && args.size() >= 2;
+        }
+
+        private void compileIntrinsic(Symbol name, List<Ast> args) {
+            if (name == ADD_NAME || name == SUBTRACT_NAME || name == DIVIDE_NAME) {
+                for (Ast arg : args) {
+                    compile(arg);
+                    emit(NUMBER);
+                }
+                emit(name == ADD_NAME ? ADD : name == SUBTRACT_NAME ? SUBTRACT : DIVIDE, args.size());
+                pop(args.size());
+                push(1);
+            } else if (name == MULTIPLY_NAME) {
+                args.forEach(this::compile);
+                emit(MULTIPLY, args.size());
+                pop(args.size());
+                push(1);
+            } else if (name == LESS_NAME || name == LESS_EQUAL_NAME || name == GREATER_NAME || name == GREATER_EQUAL_NAME) {
+                args.forEach(this::compile);
+                int operator = name == LESS_NAME ? LESS : name == LESS_EQUAL_NAME ? LESS_EQUAL
+                        : name == GREATER_NAME ? GREATER : GREATER_EQUAL;
+                emit(COMPARE, operator, args.size());
+                pop(args.size());
+                push(1);
+            } else if (name == NOT_NAME) {
+                compile(args.get(0));
+                emit(NOT);
+            } else if (name == AND_NAME || name == OR_NAME) {
+                //and stops at the first false argument, or at the first true
+                boolean stop = name == OR_NAME;
+                List<Integer> jumps = new ArrayList<>();
+                for (Ast arg : args) {
+                    compile(arg);
+                    emit(JUMP_IF, -1, stop ? 1 : 0);
+                    pop(1);
+                    jumps.add(size - 2);
+                }
+                emit(CONSTANT, constant(!stop));
+                emit(JUMP, size + 4);
+                jumps.forEach(jump -> code[jump] = size);
+                emit(CONSTANT, constant(stop));
+                push(1);
+            } else if (name == WHILE_NAME) {
+                int condition = size;
+                compile(args.get(0));
+                emit(JUMP_IF, -1, 0);
+                pop(1);
+                int exit = size - 2;
+                compile(args.get(1));
+                emit(POP);
+                pop(1);
+                emit(JUMP, condition);
+                code[exit] = size;
+                emit(CONSTANT, constant(Interpreter.VOID));
+                push(1);
+            } else if (name == DO_NAME) {
+                emit(ENTER);
+                if (args.isEmpty()) {
+                    emit(CONSTANT, constant(Interpreter.VOID));
+                    push(1);
+                }
+                for (int i = 0; i < args.size(); i++) {
+                    compile(args.get(i));
+                    if (i < args.size() - 1) {
+                        emit(POP);
+                        pop(1);
+                    }
+                }
+                emit(EXIT);
+            } else if (name == DEFINE_NAME || name == SET_NAME) {
+                Symbol symbol = Interpreter.symbolOf(args.get(0));
+                compile(args.get(1));
+                emit(name == DEFINE_NAME ? DEFINE : SET, constant(symbol));
+                pop(1);
+                emit(CONSTANT, constant(Interpreter.VOID));
+                push(1);
+            }
+        }
+
+        private int constant(Object value) {
+            constants.add(value);
+            return constants.size() - 1;
+        }
+
+        private void emit(int... instruction) {
+            if (size + instruction.length > code.length) {
+                code = Arrays.copyOf(code, Math.max(2 * code.length, size + instruction.length));
+            }
+            System.arraycopy(instruction, 0, code, size, instruction.length);
+            size += instruction.length;
+        }
+
+        private void push(int count) {
+            stack += count;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void pop(int count) {
+            stack -= count;
+        }
+
+    }
+
+}
@@ -0,0 +1,469 @@
+package plc.interpreter;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Compiles an AST into a tree of {@link Node}s for {@link
+ * Interpreter.Engine#COMPILED}. Each node is specialized to the construct it
+ * evaluates, so executing it doesn't dispatch on the type of the AST again,
+ * and the standard library functions below are compiled into nodes which
+ * execute their arguments directly.
+ *
+ * Names are still looked up when a term is executed, since any of them can be
+ * redefined. A term is only executed with its compiled implementation if its
+ * name still refers to the interpreter's standard library function; otherwise
+ * the function is called with the AST arguments as usual. The same applies to
+ * terms with the wrong number of arguments, so errors are unchanged.
+ */
+final class Compiler {
+
+    private static final Symbol ADD = Symbol.of("+");
+    private static final Symbol SUBTRACT = Symbol.of("-");
+    private static final Symbol MULTIPLY = Symbol.of("*");
+    private static final Symbol DIVIDE = Symbol.of("/");
+    private static final Symbol LESS = Symbol.of("<");
+    private static final Symbol LESS_EQUAL = Symbol.of("<=");
+    private static final Symbol GREATER = Symbol.of(">");
+    private static final Symbol GREATER_EQUAL = Symbol.of(">=");
+    private static final Symbol NOT = Symbol.of("not");
+    private static final Symbol AND = Symbol.of("and");
+    private static final Symbol OR = Symbol.of("or");
+    private static final Symbol WHILE = Symbol.of("while");
+    private static final Symbol DO = Symbol.of("do");
+    private static final Symbol DEFINE = Symbol.of("define");
+    private static final Symbol SET = Symbol.of("set!");
+
+    private final Interpreter interpreter;
+
+    Compiler(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * Returns the compiled node for the AST, which is cached on the AST.
+     */
+    Node compile(Ast ast) {
+        if (ast.compiled instanceof Node && ((Node) ast.compiled).compiler == this) {
+            return (Node) ast.compiled;
+        }
+        Node node = create(ast);
+        ast.compiled = node;
+        return node;
+    }
+
+    private Node create(Ast ast) {
+        if (ast instanceof Ast.Term) {
+            return create((Ast.Term) ast);
+        } else if (ast instanceof Ast.Identifier) {
+            Ast.Identifier identifier = (Ast.Identifier) ast;
+            return new Variable(this, identifier.getSymbol(), identifier.depth, identifier.slot);
+        } else if (ast instanceof Ast.NumberLiteral) {
+            return new Constant(this, ((Ast.NumberLiteral) ast).getValue());
+        } else if (ast instanceof Ast.StringLiteral) {
+            return new Constant(this, ((Ast.StringLiteral) ast).getValue());
+        } else {
+            throw new AssertionError(ast.getClass());
+        }
+    }
+
+    private Node create(Ast.Term ast) {
+        Symbol name = ast.getSymbol();
+        List<Ast> args = ast.getArgs();
+        Object builtin = interpreter.getBuiltin(name);
+        Node intrinsic = builtin == null ? null : createIntrinsic(name, args);
+        if (intrinsic == null) {
+            return new Call(this, ast, null, null);
+        }
+        return new Call(this, ast, builtin, intrinsic);
+    }
+
+    /**
+     * Returns the compiled implementation of the standard library function,
+     * or null if it doesn't have one for these arguments.
+     */
+    private Node createIntrinsic(Symbol name, List<Ast> args) {
+        if (name == ADD) {
+            return new Add(this, compileAll(args));
+        } else if (name == SUBTRACT && !args.isEmpty()) {
+            return new Subtract(this, compileAll(args));
+        } else if (name == MULTIPLY) {
+            return new Multiply(this, compileAll(args));
+        } else if (name == DIVIDE && !args.isEmpty()) {
+            return new Divide(this, compileAll(args));
+        } else if (name == LESS) {
+            return new Compare(this, compileAll(args), Bytecode.LESS);
+        } else if (name == LESS_EQUAL) {
+            return new Compare(this, compileAll(args), Bytecode.LESS_EQUAL);
+        } else if (name == GREATER) {
+            return new Compare(this, compileAll(args), Bytecode.GREATER);
+        } else if (name == GREATER_EQUAL) {
+            return new Compare(this, compileAll(args), Bytecode.GREATER_EQUAL);
+        } else if (name == NOT && args.size() == 1) {
+            return new Not(this, compile(args.get(0)));
+        } else if (name == AND) {
+            return new Logical(this, compileAll(args), false);
+        } else if (name == OR) {
+            return new Logical(this, compileAll(args), true);
+        } else if (name == WHILE && args.size() == 2) {
+            return new While(this, compile(args.get(0)), compile(args.get(1)));
+        } else if (name == DO) {
+            return new Do(this, compileAll(args));
+        } else if (name == DEFINE && args.size() >= 2) {
+            return new Define(this, Interpreter.symbolOf(args.get(0)), compile(args.get(1)), false);
+        } else if (name == SET && args.size() >= 2) {
+            return new Define(this, Interpreter.symbolOf(args.get(0)), compile(args.get(1)), true);
+        }
+        return null;
+    }
+
+    private Node[] compileAll(List<Ast> args) {
+        Node[] nodes = new Node[args.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = compile(args.get(i));
+        }
+        return nodes;
+    }
+
+    /**
+     * A compiled AST, which is executed in the given scope.
+     */
+    abstract static class Node {
+
+        final Compiler compiler;
+
+        Node(Compiler compiler) {
+            this.compiler = compiler;
+        }
+
+        abstract Object execute(Scope scope);
+
+        BigDecimal executeNumber(Scope scope) {
+            return Interpreter.requireType(BigDecimal.class, execute(scope));
+        }
+
+        boolean executeBoolean(Scope scope) {
+            return Interpreter.requireType(Boolean.class, execute(scope));
+        }
+
+    }
+
+    private static final class Constant extends Node {
+
+        private final Object value;
+
+        private Constant(Compiler compiler, Object value) {
+            super(compiler);
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            return value;
+        }
+
+    }
+
+    private static final class Variable extends Node {
+
+        private final Symbol name;
+        private final int depth;
+        private final int slot;
+
+        private Variable(Compiler compiler, Symbol name, int depth, int slot) {
+            super(compiler);
+            this.name = name;
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            return depth == Ast.UNRESOLVED ? scope.lookup(name) : scope.lookup(depth, slot, name);
+        }
+
+    }
+
+    /**
+     * Looks up the function for a term. If it is the standard library function
+     * the term was compiled for the intrinsic node is executed, otherwise the
+     * function is called with the AST arguments in the interpreter's scope.
+     */
+    private static final class Call extends Node {
+
+        private final Ast.Term ast;
+        private final Object builtin;
+        private final Node intrinsic;
+
+        private Call(Compiler compiler, Ast.Term ast, Object builtin, Node intrinsic) {
+            super(compiler);
+            this.ast = ast;
+            this.builtin = builtin;
+            this.intrinsic = intrinsic;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            Function<List<Ast>, Object> function = Interpreter.lookupFunction(ast, scope);
+            if (function == builtin && intrinsic != null) {
+                return intrinsic.execute(scope);
+            }
+            compiler.interpreter.scope = scope;
+            return compiler.interpreter.call(function, ast.getArgs());
+        }
+
+    }
+
+    private static final class Add extends Node {
+
+        private final Node[] args;
+
+        private Add(Compiler compiler, Node[] args) {
+            super(compiler);
+            this.args = args;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            BigDecimal result = BigDecimal.ZERO;
+            for (Node arg : args) {
+                result = Numbers.add(result, arg.executeNumber(scope));
+            }
+            return result;
+        }
+
+    }
+
+    private static final class Subtract extends Node {
+
+        private final Node[] args;
+
+        private Subtract(Compiler compiler, Node[] args) {
+            super(compiler);
+            this.args = args;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            BigDecimal result = args[0].executeNumber(scope);
+            if (args.length == 1) {
+                return Numbers.negate(result);
+            }
+            for (int i = 1; i < args.length; i++) {
+                result = Numbers.subtract(result, args[i].executeNumber(scope));
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Evaluates every argument before checking types, like the {@code *}
+     * function does.
+     */
+    private static final class Multiply extends Node {
+
+        private final Node[] args;
+
+        private Multiply(Compiler compiler, Node[] args) {
+            super(compiler);
+            this.args = args;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            Arguments arguments = compiler.interpreter.arguments;
+            int base = arguments.reserve(args.length);
+            try {
+                for (int i = 0; i < args.length; i++) {
+                    arguments.set(base + i, args[i].execute(scope));
+                }
+                BigDecimal result = BigDecimal.ONE;
+                for (int i = 0; i < args.length; i++) {
+                    result = Numbers.multiply(result, Interpreter.requireType(BigDecimal.class, arguments.get(base + i)));
+                }
+                return result;
+            } finally {
+                arguments.release(base);
+            }
+        }
+
+    }
+
+    /**
+     * Evaluates every argument before dividing, like the {@code /} function
+     * does, so a later argument's side effects happen even if an earlier one
+     * is zero.
+     */
+    private static final class Divide extends Node {
+
+        private final Node[] args;
+
+        private Divide(Compiler compiler, Node[] args) {
+            super(compiler);
+            this.args = args;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            Arguments arguments = compiler.interpreter.arguments;
+            int base = arguments.reserve(args.length);
+            try {
+                for (int i = 0; i < args.length; i++) {
+                    arguments.set(base + i, args[i].executeNumber(scope));
+                }
+                return Interpreter.divide(arguments.array(), base, base + args.length);
+            } finally {
+                arguments.release(base);
+            }
+        }
+
+    }
+
+    /**
+     * The comparison functions, which evaluate every argument once and then
+     * compare them pairwise if they are all numbers or all strings.
+     */
+    private static final class Compare extends Node {
+
+        private final Node[] args;
+        private final int operator;
+
+        private Compare(Compiler compiler, Node[] args, int operator) {
+            super(compiler);
+            this.args = args;
+            this.operator = operator;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            Arguments arguments = compiler.interpreter.arguments;
+            int base = arguments.reserve(args.length);
+            try {
+                for (int i = 0; i < args.length; i++) {
+                    arguments.set(base + i, args[i].execute(scope));
+                }
+                return VirtualMachine.compare(arguments.array(), base, base + args.length, operator);
+            } finally {
+                arguments.release(base);
+            }
+        }
+
+    }
+
+    private static final class Not extends Node {
+
+        private final Node arg;
+
+        private Not(Compiler compiler, Node arg) {
+            super(compiler);
+            this.arg = arg;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            return !arg.executeBoolean(scope);
+        }
+
+    }
+
+    /**
+     * {@code and} and {@code or}, which stop at the first argument that is
+     * equal to {@code result}.
+     */
+    private static final class Logical extends Node {
+
+        private final Node[] args;
+        private final boolean result;
+
+        private Logical(Compiler compiler, Node[] args, boolean result) {
+            super(compiler);
+            this.args = args;
+            this.result = result;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            for (Node arg : args) {
+                if (arg.executeBoolean(scope) == result) {
+                    return result;
+                }
+            }
+            return !result;
+        }
+
+    }
+
+    private static final class While extends Node {
+
+        private final Node condition;
+        private final Node body;
+
+        private While(Compiler compiler, Node condition, Node body) {
+            super(compiler);
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            while (condition.executeBoolean(scope)) {
+                body.execute(scope);
+            }
+            return Interpreter.VOID;
+        }
+
+    }
+
+    private static final class Do extends Node {
+
+        private final Node[] args;
+
+        private Do(Compiler compiler, Node[] args) {
+            super(compiler);
+            this.args = args;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            Scope child = new Scope(scope);
+            Object result = Interpreter.VOID;
+            for (Node arg : args) {
+                result = arg.execute(child);
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * {@code define}, or {@code set!} if {@code set} is true.
+     */
+    private static final class Define extends Node {
+
+        private final Symbol name;
+        private final Node value;
+        private final boolean set;
+
+        private Define(Compiler compiler, Symbol name, Node value, boolean set) {
+            super(compiler);
+            this.name = name;
+            this.value = value;
+            this.set = set;
+        }
+
+        @Override
+        Object execute(Scope scope) {
+            Object value = this.value.execute(scope);
+            if (set) {
+                scope.set(name, value);
+            } else {
+                scope.define(name, value);
+            }
+            return Interpreter.VOID;
+        }
+
+    }
+
+}
@@ -0,0 +1,178 @@
+package plc.interpreter;
+
+import java.util.function.BiConsumer;
+
+/**
+ * A persistent map from {@link Symbol} to value, implemented as a hash array
+ * mapped trie. Adding a value returns a new map which shares every node with
+ * the old one except those on the path to the key, so copying a map is free
+ * and each version can be used independently, including from other threads.
+ *
+ * Each node has a bitmap of which of its 32 children are present and an array
+ * of just those children, each either an {@link Entry} or a deeper node. The
+ * child is chosen by the next five bits of the key's {@link Symbol#getId()
+ * id}, starting with the lowest. Ids are unique, so two keys always differ in
+ * some five bits and there are no collisions to handle, and as ids are
+ * allocated sequentially the names of a program fill the top levels densely.
+ */
+final class Hamt {
+
+    /**
+     * Returned by {@link #get(Symbol)} for keys which aren't in the map, as
+     * values may be null.
+     */
+    static final Object ABSENT = new Object();
+
+    static final Hamt EMPTY = new Hamt(new Node(0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+
+    private Hamt(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns a map of the first {@code size} names and values, which must be
+     * distinct.
+     */
+    static Hamt of(Symbol[] names, Object[] values, int size) {
+        Hamt map = EMPTY;
+        for (int i = 0; i < size; i++) {
+            map = map.insert(names[i], values[i]);
+        }
+        return map;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value of the key, or {@link #ABSENT} if there is none.
+     */
+    Object get(Symbol key) {
+        int id = key.getId();
+        Node node = root;
+        for (int shift = 0; ; shift += 5) {
+            int bit = 1 << ((id >>> shift) & 31);
+            if ((node.bitmap & bit) == 0) {
+                return ABSENT;
+            }
+            Object child = node.children[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (child instanceof Entry) {
+                return ((Entry) child).key == key ? ((Entry) child).value : ABSENT;
+            }
+            node = (Node) child;
+        }
+    }
+
+    /**
+     * Returns a map with the key added, or null if the key is already in the
+     * map, with a single walk down the trie.
+     */
+    Hamt insert(Symbol key, Object value) {
+        Node root = put(this.root, new Entry(key, value), 0, false);
+        return root != null ? new Hamt(root, size + 1) : null;
+    }
+
+    /**
+     * Returns a map with the value of the key replaced, or null if the key
+     * isn't in the map, with a single walk down the trie.
+     */
+    Hamt replace(Symbol key, Object value) {
+        Node root = put(this.root, new Entry(key, value), 0, true);
+        return root != null ? new Hamt(root, size) : null;
+    }
+
+    /**
+     * Returns a copy of the node with the entry put in it, or null if the key
+     * is present and {@code replace} is false or absent and it is true.
+     */
+    private static Node put(Node node, Entry entry, int shift, boolean replace) {
+        int bit = 1 << ((entry.key.getId() >>> shift) & 31);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            if (replace) {
+                return null;
+            }
+            Object[] children = new Object[node.children.length + 1];
+            System.arraycopy(node.children, 0, children, 0, index);
+            children[index] = entry;
+            System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+            return new Node(node.bitmap | bit, children);
+        }
+        Object child = node.children[index];
+        Object replacement;
+        if (child instanceof Node) {
+            replacement = put((Node) child, entry, shift + 5, replace);
+        } else if (((Entry) child).key == entry.key) {
+            replacement = replace ? entry : null;
+        } else {
+            replacement = replace ? null : merge((Entry) child, entry, shift + 5);
+        }
+        if (replacement == null) {
+            return null;
+        }
+        Object[] children = node.children.clone();
+        children[index] = replacement;
+        return new Node(node.bitmap, children);
+    }
+
+    /**
+     * Returns a node holding both entries, which have the same bits below
+     * {@code shift}.
+     */
+    private static Node merge(Entry first, Entry second, int shift) {
+        int firstBits = (first.key.getId() >>> shift) & 31;
+        int secondBits = (second.key.getId() >>> shift) & 31;
+        if (firstBits == secondBits) {
+            return new Node(1 << firstBits, new Object[] {merge(first, second, shift + 5)});
+        }
+        return new Node((1 << firstBits) | (1 << secondBits),
+                firstBits < secondBits ? new Object[] {first, second} : new Object[] {second, first});
+    }
+
+    /**
+     * Calls the action with every key and value, in no particular order.
+     */
+    void forEach(BiConsumer<Symbol, Object> action) {
+        forEach(root, action);
+    }
+
+    private static void forEach(Node node, BiConsumer<Symbol, Object> action) {
+        for (Object child : node.children) {
+            if (child instanceof Entry) {
+                action.accept(((Entry) child).key, ((Entry) child).value);
+            } else {
+                forEach((Node) child, action);
+            }
+        }
+    }
+
+    private static final class Node {
+
+        private final int bitmap;
+        private final Object[] children;
+
+        private Node(int bitmap, Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+    }
+
+    private static final class Entry {
+
+        private final Symbol key;
+        private final Object value;
+
+        private Entry(Symbol key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+    }
+
+}
@@ -2,12 +2,12 @@ package plc.interpreter;
 
 import java.io.PrintWriter;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public final class Interpreter {
 
@@ -25,13 +25,137 @@ public final class Interpreter {
 
     };
 
+    /**
+     * The ways an interpreter can evaluate an AST, which produce the same
+     * results.
+     *
+     *  - {@link #TREE} evaluates the AST directly, as described below.
+     *  - {@link #COMPILED} compiles the AST into a tree of nodes with the
+     *    {@link Compiler} the first time it is evaluated, then executes that.
+     *  - {@link #BYTECODE} compiles the AST into {@link Bytecode} the first
+     *    time it is evaluated, then runs that on the {@link VirtualMachine}.
+     *  - {@link #JIT} evaluates the AST directly, but counts how often each
+     *    term is evaluated and has the {@link Jit} compile hot terms into JVM
+     *    bytecode.
+     *  - {@link #TRAMPOLINE} evaluates the AST directly, but evaluates the
+     *    last expression of a {@code do} in a loop instead of recursing, so
+     *    any number of nested {@code do}s in tail position use constant Java
+     *    stack and are bounded only by the heap.
+     */
+    public enum Engine {
+        TREE,
+        COMPILED,
+        BYTECODE,
+        JIT,
+        TRAMPOLINE
+    }
+
+    /**
+     * A standard library function. The functions are created once and shared
+     * by every interpreter, so instead of capturing an interpreter they are
+     * passed the one calling them. Calling one as a plain {@link Function}
+     * uses the interpreter which called the function doing so.
+     */
+    @FunctionalInterface
+    interface Builtin extends Function<List<Ast>, Object> {
+
+        Object apply(Interpreter interpreter, List<Ast> args);
+
+        @Override
+        default Object apply(List<Ast> args) {
+            Interpreter interpreter = CURRENT.get();
+            if (interpreter == null) {
+                throw new EvalException("Standard library functions can only be called while evaluating.");
+            }
+            return apply(interpreter, args);
+        }
+
+    }
+
+    private static final Symbol DO = Symbol.of("do");
+
+    /**
+     * The interpreter calling a function which isn't a {@link Builtin} on this
+     * thread, for builtins that function calls in turn.
+     */
+    private static final ThreadLocal<Interpreter> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The standard library, which is defined once, frozen and attached to the
+     * root of every interpreter's scope, see {@link Scope#attach(Scope)}.
+     */
+    private static final Map<Symbol, Object> BUILTINS = new HashMap<>();
+    private static final Scope GLOBAL = new Scope(null);
+
+    static {
+        init();
+        GLOBAL.freeze();
+    }
+
     public final PrintWriter out;
+
+    /**
+     * The current scope, which only the thread evaluating with this
+     * interpreter may use. Threads sharing variables each create their own
+     * interpreter on a {@link Scope#concurrent(Scope)} root.
+     */
     public Scope scope;
+    private final Engine engine;
+    final Arguments arguments = new Arguments();
+    private final Compiler compiler = new Compiler(this);
+    private final Jit jit = new Jit(this);
 
     public Interpreter(PrintWriter out, Scope scope) {
+        this(out, scope, Engine.TREE);
+    }
+
+    public Interpreter(PrintWriter out, Scope scope, Engine engine) {
         this.out = out;
+        this.engine = engine;
+        reset(scope);
+    }
+
+    /**
+     * Replaces the current scope, so this interpreter can be reused to run
+     * another script without seeing the variables of the last one.
+     */
+    void reset(Scope scope) {
         this.scope = scope;
-        init();
+        scope.attach(GLOBAL);
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Captures the variables and engine of this interpreter, so a script can
+     * be run once to set up state and each later run can start from a fork of
+     * it instead of running the script again. Taking a snapshot and forking it
+     * don't copy the variables, see {@link Scope#fork()}, and neither this
+     * interpreter, the snapshot nor any fork see each other's changes.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(scope.fork(), engine);
+    }
+
+    public static final class Snapshot {
+
+        private final Scope scope;
+        private final Engine engine;
+
+        private Snapshot(Scope scope, Engine engine) {
+            this.scope = scope;
+            this.engine = engine;
+        }
+
+        /**
+         * Returns a new interpreter starting from the snapshot's state.
+         */
+        public Interpreter fork(PrintWriter out) {
+            return new Interpreter(out, scope.fork(), engine);
+        }
+
     }
 
     /**
@@ -39,8 +163,12 @@ public final class Interpreter {
      * is another approach to implementing the visitor pattern.
      */
     public Object eval(Ast ast) {
-        if (ast instanceof Ast.Term) {
-            return eval((Ast.Term) ast);
+        if (engine == Engine.COMPILED || engine == Engine.BYTECODE) {
+            return execute(ast);
+        } else if (ast instanceof Ast.Term) {
+            return engine == Engine.JIT ? jit.eval((Ast.Term) ast)
+                    : engine == Engine.TRAMPOLINE ? trampoline((Ast.Term) ast)
+                    : eval((Ast.Term) ast);
         } else if (ast instanceof Ast.Identifier) {
             return eval((Ast.Identifier) ast);
         } else if (ast instanceof Ast.NumberLiteral) {
@@ -52,14 +180,139 @@ public final class Interpreter {
         }
     }
 
+    /**
+     * Executes the compiled form of the AST in the current scope. Compiled
+     * nodes pass their scope along directly and only store it in {@link
+     * #scope} when calling a function, so the scope is restored afterwards.
+     */
+    private Object execute(Ast ast) {
+        Scope scope = this.scope;
+        try {
+            return engine == Engine.BYTECODE
+                    ? VirtualMachine.run(Bytecode.compile(this, ast), scope)
+                    : compiler.compile(ast).execute(scope);
+        } finally {
+            this.scope = scope;
+        }
+    }
+
     /**
      * Evaluations the Term ast, which returns the value resulting by calling
      * the function stored under the term's name in the current scope. You will
      * need to check that the type of the value is a {@link Function}, and cast
      * to the type {@code Function<List<Ast>, Object>}.
      */
-    private Object eval(Ast.Term ast) {
-        return requireType(Function.class, scope.lookup(ast.getName())).apply(ast.getArgs());
+    Object eval(Ast.Term ast) {
+        return call(lookupFunction(ast, scope), ast.getArgs());
+    }
+
+    /**
+     * Calls the function with the arguments, passing this interpreter to
+     * standard library functions directly.
+     */
+    Object call(Function<List<Ast>, Object> function, List<Ast> args) {
+        if (function instanceof Builtin) {
+            return ((Builtin) function).apply(this, args);
+        }
+        Interpreter previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return function.apply(args);
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Evaluates the Term ast like {@link #eval(Ast.Term)}, except that calls to
+     * the standard {@code do} are evaluated here: the expressions before the
+     * last are evaluated normally, then the last one (the tail position)
+     * replaces the term and the loop continues instead of recursing. Each
+     * {@code do} still gets its own scope, and all of them are exited when
+     * the final value is returned, as if each {@code do} had returned in turn.
+     * As with {@code do} itself, the scope is not restored if an exception is
+     * thrown. Other terms are only checked against the standard {@code do}.
+     *
+     * Every scope entered here is a child of the previous one, so if a term
+     * has the same name as the previous term and the name hasn't been defined
+     * or set anywhere since, it calls the same function without looking it up
+     * through every scope entered so far.
+     */
+    private Object trampoline(Ast.Term ast) {
+        Object tail = getBuiltin(DO);
+        Scope entry = scope;
+        Ast current = ast;
+        Symbol name = null;
+        int version = 0;
+        Function<List<Ast>, Object> function = null;
+        while (current instanceof Ast.Term) {
+            Ast.Term term = (Ast.Term) current;
+            if (term.getSymbol() != name || name.version() != version) {
+                name = term.getSymbol();
+                version = name.version();
+                function = lookupFunction(term, scope);
+            }
+            List<Ast> args = term.getArgs();
+            if (function != tail || args.isEmpty()) {
+                Object result = call(function, args);
+                scope = entry;
+                return result;
+            }
+            scope = new Scope(scope);
+            for (int i = 0; i < args.size() - 1; i++) {
+                eval(args.get(i));
+            }
+            current = args.get(args.size() - 1);
+        }
+        Object result = eval(current);
+        scope = entry;
+        return result;
+    }
+
+    /**
+     * A monomorphic inline cache for the function a term calls, which holds
+     * as long as the name hasn't been defined or set anywhere since and the
+     * lookup still finds it in the same scope. Every {@code do} and {@code
+     * for} body runs in a new scope, so the cache is keyed on the scope the
+     * binding was found in rather than the one the lookup started from, and
+     * only skips the walk up the scopes if the term is evaluated in the same
+     * scope again. Otherwise the walk only compares names, so a term in a loop
+     * body doesn't look its function up or allocate a new cache on every
+     * iteration.
+     */
+    static final class CallCache {
+
+        private final Scope scope;
+        private final Scope holder;
+        private final int version;
+        private final Function<List<Ast>, Object> function;
+
+        private CallCache(Scope scope, Scope holder, int version, Function<List<Ast>, Object> function) {
+            this.scope = scope;
+            this.holder = holder;
+            this.version = version;
+            this.function = function;
+        }
+
+    }
+
+    /**
+     * Returns the function the term calls in the scope, using the term's
+     * inline cache if it holds and otherwise looking the name up and caching
+     * the result.
+     */
+    @SuppressWarnings("unchecked")
+    static Function<List<Ast>, Object> lookupFunction(Ast.Term ast, Scope scope) {
+        Symbol name = ast.getSymbol();
+        int version = name.version();
+        CallCache cache = ast.cache;
+        if (cache != null && cache.version == version && (cache.scope == scope || scope.find(name) == cache.holder)) {
+            return cache.function;
+        }
+        Object value = ast.depth == Ast.UNRESOLVED ? scope.lookup(name) : scope.lookup(ast.depth, ast.slot, name);
+        Function<List<Ast>, Object> function = requireType(Function.class, value);
+        ast.cache = new CallCache(scope, scope.find(name), version, function);
+        return function;
     }
 
     /**
@@ -67,7 +320,18 @@ public final class Interpreter {
      * identifier's name in the current scope.
      */
     private Object eval(Ast.Identifier ast) {
-        return scope.lookup(ast.getName());
+        return lookup(ast.getSymbol(), ast.depth, ast.slot);
+    }
+
+    /**
+     * Looks up the name in the current scope, using the lexical address from
+     * the {@link Resolver} if it has one.
+     */
+    private Object lookup(Symbol name, int depth, int slot) {
+        if (depth == Ast.UNRESOLVED) {
+            return scope.lookup(name);
+        }
+        return scope.lookup(depth, slot, name);
     }
 
     /**
@@ -85,72 +349,85 @@ public final class Interpreter {
     }
 
     /**
-     * Initializes the interpreter with fields and functions in the standard
-     * library.
+     * Defines the fields and functions in the standard library in {@link
+     * #GLOBAL}. The functions use the interpreter they are called by, {@code
+     * in}, for evaluation, the current in.scope and output.
      */
-    private void init() {
-        scope.define("print", (Function<List<Ast>, Object>) args -> {
-            List<Object> evaluated = args.stream().map(this::eval).collect(Collectors.toList());
-            evaluated.forEach(out::print);
-            out.println();
-            return VOID;
+    private static void init() {
+        define("print", (Builtin) (in, args) -> {
+            Arguments arguments = in.arguments;
+            int base = arguments.reserve(args.size());
+            try {
+                in.evaluate(args, arguments, base);
+                for (int i = 0; i < args.size(); i++) {
+                    in.out.print(arguments.get(base + i));
+                }
+                in.out.println();
+                return VOID;
+            } finally {
+                arguments.release(base);
+            }
         });
 
-        scope.define("-", (Function<List<Ast>, Object>) args -> {
-            List<BigDecimal> evaluated = args.stream().map(a -> requireType(BigDecimal.class, eval(a))).collect(Collectors.toList());
-            if (evaluated.isEmpty()) {
+        define("-", (Builtin) (in, args) -> {
+            if (args.isEmpty()) {
                 throw new EvalException(("Arguments to - cannot be empty."));
-            } else if (evaluated.size() == 1) {
-                return evaluated.get(0).negate();
-            } else {
-                BigDecimal num = evaluated.get(0);
-                for (int i = 1; i < evaluated.size(); i++) {
-                    num = num.subtract(evaluated.get(i));
-                }
-                return num;
             }
+            BigDecimal num = requireType(BigDecimal.class, in.eval(args.get(0)));
+            if (args.size() == 1) {
+                return Numbers.negate(num);
+            }
+            for (int i = 1; i < args.size(); i++) {
+                num = Numbers.subtract(num, requireType(BigDecimal.class, in.eval(args.get(i))));
+            }
+            return num;
         });
 
-        scope.define("+", (Function<List<Ast>, Object>) args -> {
-            List<BigDecimal> evaluated = args.stream().map(a -> requireType(BigDecimal.class, eval(a))).collect(Collectors.toList());
+        define("+", (Builtin) (in, args) -> {
             BigDecimal result = BigDecimal.ZERO; //auto zero
-            for (Object obj : evaluated) {
-                result = result.add(requireType(BigDecimal.class, obj));
+            for (int i = 0; i < args.size(); i++) {
+                result = Numbers.add(result, requireType(BigDecimal.class, in.eval(args.get(i))));
             }
             return result;
         });
 
-        scope.define("*", (Function<List<Ast>, Object>) args -> {
-            List<Object> evaluated = args.stream().map(this::eval).collect(Collectors.toList());
-            BigDecimal result = BigDecimal.ONE; //auto one
-            for (Object obj : evaluated) {
-                result = result.multiply(requireType(BigDecimal.class, obj));
+        define("*", (Builtin) (in, args) -> {
+            Arguments arguments = in.arguments;
+            int base = arguments.reserve(args.size());
+            try {
+                in.evaluate(args, arguments, base);
+                BigDecimal result = BigDecimal.ONE; //auto one
+                for (int i = 0; i < args.size(); i++) {
+                    result = Numbers.multiply(result, requireType(BigDecimal.class, arguments.get(base + i)));
+                }
+                return result;
+            } finally {
+                arguments.release(base);
             }
-            return result;
         });
 
-        scope.define("/", (Function<List<Ast>, Object>) args -> {
-            List<BigDecimal> evaluated = args.stream().map(a -> requireType(BigDecimal.class, eval(a))).collect(Collectors.toList());
-            if(evaluated.isEmpty()){
+        define("/", (Builtin) (in, args) -> {
+            if(args.isEmpty()){
                 throw new EvalException(("Arguments to / cannot be empty."));
-            }else if(evaluated.size() == 1){
-                BigDecimal num = BigDecimal.ONE;
-                num = num.divide(evaluated.get(0),0, RoundingMode.HALF_EVEN);
-                return num;
-            }else {
-                BigDecimal num = evaluated.get(0);
-                for (int i = 1; i < evaluated.size(); i++) {
-                    num = num.divide(evaluated.get(i),0, RoundingMode.HALF_EVEN);
+            }
+            //every argument is evaluated before dividing, so dividing by zero fails after their side effects
+            Arguments arguments = in.arguments;
+            int base = arguments.reserve(args.size());
+            try {
+                for (int i = 0; i < args.size(); i++) {
+                    arguments.set(base + i, requireType(BigDecimal.class, in.eval(args.get(i))));
                 }
-                return num;
+                return divide(arguments.array(), base, base + args.size());
+            } finally {
+                arguments.release(base);
             }
         });
 
-        scope.define("true",true);
+        define("true",true);
 
-        scope.define("false",false);
+        define("false",false);
 
-        scope.define("equals?", (Function<List<Ast>, Object>) args -> {
+        define("equals?", (Builtin) (in, args) -> {
             if(args.isEmpty()){
                 System.out.println("0 arg");
                 throw new EvalException(("Arguments to not cannot be empty."));
@@ -164,165 +441,70 @@ public final class Interpreter {
             throw new EvalException("Arguments to not cannot be empty.");
         });
 
-        scope.define("not", (Function<List<Ast>, Object>) args -> {
+        define("not", (Builtin) (in, args) -> {
             if(args.isEmpty()){
                 throw new EvalException(("Arguments to not cannot be empty."));
             }else if(args.size()>1){
                 throw new EvalException(("Arguments to not cannot be >1."));
             }
-            return !requireType(Boolean.class, eval(args.get(0)));
+            return !requireType(Boolean.class, in.eval(args.get(0)));
         });
 
-        scope.define("while", (Function<List<Ast>, Object>) args -> {
+        define("while", (Builtin) (in, args) -> {
             if ( args.size() != 2 ) {
                 throw new EvalException( "Expected 2 arguments, received " + args.size() + "." );
             }
-            while ( requireType( Boolean.class, eval( args.get(0) ) ) ) {
-                eval( args.get(1) );
+            while ( requireType( Boolean.class, in.eval( args.get(0) ) ) ) {
+                in.eval( args.get(1) );
             }
             return VOID;
         });
 
-        scope.define("do", (Function<List<Ast>, Object>) args -> {
-            scope = new Scope(scope);
-            List<Object> evaluated = args.stream().map(this::eval).collect(Collectors.toList());
-            scope = scope.getParent();
-            int temp = evaluated.size()-1;
-            return !evaluated.isEmpty() ? evaluated.get(temp) : VOID;
+        define("do", (Builtin) (in, args) -> {
+            in.scope = new Scope(in.scope);
+            Object result = VOID;
+            for (int i = 0; i < args.size(); i++) {
+                result = in.eval(args.get(i));
+            }
+            in.scope = in.scope.getParent();
+            return result;
         });
 
-        scope.define("and", (Function<List<Ast>, Object>) args -> {
+        define("and", (Builtin) (in, args) -> {
             for ( Ast arg : args ) {
-                if ( !requireType( Boolean.class, eval(arg) ) ) {
+                if ( !requireType( Boolean.class, in.eval(arg) ) ) {
                     return false;
                 }
             }
             return true;
         });
 
-        scope.define("or", (Function<List<Ast>, Object>) args -> {
+        define("or", (Builtin) (in, args) -> {
             for ( Ast arg : args ) {
-                if ( requireType( Boolean.class, eval(arg) ) ) {
+                if ( requireType( Boolean.class, in.eval(arg) ) ) {
                     return true;
                 }
             }
             return false;
         });
 
-        scope.define("<", (Function<List<Ast>, Object>) args -> {
-            if(args.size() == 0) {
-                return true;
-            }
-            if(args.stream().allMatch(i -> eval(i) instanceof BigDecimal)) {
-                List<BigDecimal> evaluated = args.stream().map(a -> requireType(BigDecimal.class, eval(a))).collect(Collectors.toList());
-                for (int i = 0; i < evaluated.size()-1; i++) {
-                    if (((evaluated.get(i)).compareTo(evaluated.get(i+1))) > -1) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            else if(args.stream().allMatch(i -> eval(i) instanceof String)) {
-                List<String> evaluated = args.stream().map(a -> requireType(String.class, eval(a))).collect(Collectors.toList());
-                for (int i = 0; i < evaluated.size() - 1; i++) {
-                    if (((evaluated.get(i)).compareTo(evaluated.get(i + 1))) > -1) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            else {
-                throw new EvalException("Arguments not comparable.");
-            }
-        });
+        define("<", (Builtin) (in, args) -> in.compare(args, Bytecode.LESS));
 
-        scope.define("<=", (Function<List<Ast>, Object>) args -> {
-            if(args.size() == 0) {
-                return true;
-            }
-            if(args.stream().allMatch(i -> eval(i) instanceof BigDecimal)) {
-                List<BigDecimal> evaluated = args.stream().map(a -> requireType(BigDecimal.class, eval(a))).collect(Collectors.toList());
-                for (int i = 0; i < evaluated.size()-1; i++) {
-                    if (((evaluated.get(i)).compareTo(evaluated.get(i+1))) > 0) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            else if(args.stream().allMatch(i -> eval(i) instanceof String)) {
-                List<String> evaluated = args.stream().map(a -> requireType(String.class, eval(a))).collect(Collectors.toList());
-                for (int i = 0; i < evaluated.size() - 1; i++) {
-                    if (((evaluated.get(i)).compareTo(evaluated.get(i + 1))) > 0) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            else {
-                throw new EvalException("Arguments not comparable.");
-            }
-        });
+        define("<=", (Builtin) (in, args) -> in.compare(args, Bytecode.LESS_EQUAL));
 
-        scope.define(">", (Function<List<Ast>, Object>) args -> {
-            if(args.size() == 0) {
-                return true;
-            }
-            if(args.stream().allMatch(i -> eval(i) instanceof BigDecimal)) {
-                List<BigDecimal> evaluated = args.stream().map(a -> requireType(BigDecimal.class, eval(a))).collect(Collectors.toList());
-                for (int i = 0; i < evaluated.size()-1; i++) {
-                    if (((evaluated.get(i)).compareTo(evaluated.get(i+1))) < 1) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            else if(args.stream().allMatch(i -> eval(i) instanceof String)) {
-                List<String> evaluated = args.stream().map(a -> requireType(String.class, eval(a))).collect(Collectors.toList());
-                for (int i = 0; i < evaluated.size() - 1; i++) {
-                    if (((evaluated.get(i)).compareTo(evaluated.get(i + 1))) < 1) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            else {
-                throw new EvalException("Arguments not comparable.");
-            }
-        });
+        define(">", (Builtin) (in, args) -> in.compare(args, Bytecode.GREATER));
 
-        scope.define(">=", (Function<List<Ast>, Object>) args -> {
-            if(args.size() == 0) {
-                return true;
-            }
-            if(args.stream().allMatch(i -> eval(i) instanceof BigDecimal)) {
-                List<BigDecimal> evaluated = args.stream().map(a -> requireType(BigDecimal.class, eval(a))).collect(Collectors.toList());
-                for (int i = 0; i < evaluated.size()-1; i++) {
-                    if (((evaluated.get(i)).compareTo(evaluated.get(i+1))) < 0) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            else if(args.stream().allMatch(i -> eval(i) instanceof String)) {
-                List<String> evaluated = args.stream().map(a -> requireType(String.class, eval(a))).collect(Collectors.toList());
-                for (int i = 0; i < evaluated.size() - 1; i++) {
-                    if (((evaluated.get(i)).compareTo(evaluated.get(i + 1))) < 0) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            else {
-                throw new EvalException("Arguments not comparable.");
-            }
-        });
+        define(">=", (Builtin) (in, args) -> in.compare(args, Bytecode.GREATER_EQUAL));
 
-        scope.define("list", (Function<List<Ast>, Object>) args -> {
-            LinkedList<Object> list = args.stream().map(a -> requireType(Object.class, eval(a))).collect(Collectors.toCollection(LinkedList::new));
+        define("list", (Builtin) (in, args) -> {
+            LinkedList<Object> list = new LinkedList<>();
+            for (int i = 0; i < args.size(); i++) {
+                list.add(requireType(Object.class, in.eval(args.get(i))));
+            }
             return list;
         });
 
-        scope.define("range", (Function<List<Ast>, Object>) args -> {
+        define("range", (Builtin) (in, args) -> {
             LinkedList<Ast.NumberLiteral> range = new LinkedList<>();
             if(args.size() == 0){
                 throw new EvalException("No arguments.");
@@ -331,18 +513,20 @@ public final class Interpreter {
             }else if(args.size() > 2){
                 throw new EvalException("too many arguments.");
             }
-            else if ((((BigDecimal)eval(args.get(0))).compareTo((BigDecimal)eval(args.get(1)))) == 0) {
+            BigDecimal first = (BigDecimal) in.eval(args.get(0));
+            BigDecimal second = (BigDecimal) in.eval(args.get(1));
+            if ((first.compareTo(second)) == 0) {
                    return range;
             }
-            else if((((BigDecimal)(eval(args.get(0)))).stripTrailingZeros()).scale() > 0 || (((BigDecimal)(eval(args.get(1)))).stripTrailingZeros()).scale() > 0) {
+            else if((first.stripTrailingZeros()).scale() > 0 || (second.stripTrailingZeros()).scale() > 0) {
                 throw new EvalException("Argument is not exact integer.");
             }
-            else if((((BigDecimal)eval(args.get(0))).compareTo((BigDecimal)eval(args.get(1)))) == 1) {
+            else if((first.compareTo(second)) == 1) {
                 throw new EvalException("Second argument less than first.");
             }
             else {
-                int small = (((BigDecimal)eval(args.get(0)))).intValue();
-                int big = (((BigDecimal)eval(args.get(1)))).intValue();
+                int small = first.intValue();
+                int big = second.intValue();
                 for(int i = small; i < big; i++) {
                     range.add(new Ast.NumberLiteral(((BigDecimal.valueOf(i)))));
                 }
@@ -350,42 +534,117 @@ public final class Interpreter {
             return range;
         });
 
-        scope.define("define", (Function<List<Ast>, Object>) args -> {
+        define("define", (Builtin) (in, args) -> {
             if(args.size() == 0) {
                 throw new EvalException("No arguments.");
             }
-            scope.define(args.get(0).toString(), eval(args.get(1)));
+            in.scope.define(symbolOf(args.get(0)), in.eval(args.get(1)));
             return VOID;
         });
 
-        scope.define("set!", (Function<List<Ast>, Object>) args -> {
+        define("set!", (Builtin) (in, args) -> {
             if(args.isEmpty()){
                 throw new EvalException("Empty set!");
             }
-            scope.set(args.get(0).toString(), eval(args.get(1)));
+            in.scope.set(symbolOf(args.get(0)), in.eval(args.get(1)));
             return VOID;
         });
 
-        scope.define("for", (Function<List<Ast>, Object>) args -> {
+        define("for", (Builtin) (in, args) -> {
             if ( args.size() != 2 ) {
                 throw new EvalException( "Expected 2 arguments, received " + args.size() + "." );
             }
             if(args.get(0) instanceof Ast.Term) {
 
             }
-            scope = new Scope(scope);
-            LinkedList<Object> list = args.stream().map(a -> requireType(Object.class, eval(a))).collect(Collectors.toCollection(LinkedList::new));
+            in.scope = new Scope(in.scope);
+            LinkedList<Object> list = new LinkedList<>();
+            for (int i = 0; i < args.size(); i++) {
+                list.add(requireType(Object.class, in.eval(args.get(i))));
+            }
             Object iterator;
             for(int i = 0; i < list.size(); i++) {
                 iterator = list.get(i);
-                eval(args.get(i+1));
+                in.eval(args.get(i+1));
             }
-            scope = scope.getParent();
+            in.scope = in.scope.getParent();
             return VOID;
         });
 
     }
 
+    /**
+     * Evaluates the arguments in order into the reserved slots from {@code
+     * base}.
+     */
+    private void evaluate(List<Ast> args, Arguments arguments, int base) {
+        for (int i = 0; i < args.size(); i++) {
+            arguments.set(base + i, eval(args.get(i)));
+        }
+    }
+
+    /**
+     * Implements the comparison functions, which evaluate every argument once
+     * and compare them pairwise with the {@link Bytecode} comparison operator
+     * if they are all numbers or all strings.
+     */
+    private Object compare(List<Ast> args, int operator) {
+        int base = arguments.reserve(args.size());
+        try {
+            evaluate(args, arguments, base);
+            return VirtualMachine.compare(arguments.array(), base, base + args.size(), operator);
+        } finally {
+            arguments.release(base);
+        }
+    }
+
+    /**
+     * Defines a standard library function or field in the global scope.
+     */
+    private static void define(String name, Object value) {
+        GLOBAL.define(name, value);
+        BUILTINS.put(Symbol.of(name), value);
+    }
+
+    /**
+     * Returns the standard library value defined under the name, regardless
+     * of whether it has since been redefined.
+     */
+    Object getBuiltin(Symbol name) {
+        return BUILTINS.get(name);
+    }
+
+    /**
+     * Returns the symbol for the name being defined or set by {@code define}
+     * and {@code set!}, which is the printed form of the AST.
+     */
+    static Symbol symbolOf(Ast ast) {
+        return ast instanceof Ast.Identifier ? ((Ast.Identifier) ast).getSymbol() : Symbol.of(ast.toString());
+    }
+
+    /**
+     * Divides the first number by the rest, or inverts it if there is only
+     * one, after every argument has been evaluated. Every engine divides with
+     * this so dividing by zero is an {@link EvalException} in all of them.
+     */
+    static BigDecimal divide(Object[] values, int start, int end) {
+        BigDecimal result = (BigDecimal) values[start];
+        if (end - start == 1) {
+            return divide(BigDecimal.ONE, result);
+        }
+        for (int i = start + 1; i < end; i++) {
+            result = divide(result, (BigDecimal) values[i]);
+        }
+        return result;
+    }
+
+    private static BigDecimal divide(BigDecimal left, BigDecimal right) {
+        if (right.signum() == 0) {
+            throw new EvalException("Cannot divide " + left + " by zero.");
+        }
+        return Numbers.divide(left, right);
+    }
+
     /**
      * A helper function for type checking, taking in a type and an object and
      * throws an exception if the object does not have the required type.
@@ -394,7 +653,7 @@ public final class Interpreter {
      * occurs - in a real interpreter, we would have a stacktrace to provide
      * that implementation. For now, this is the simple-but-not-ideal solution.
      */
-    private static <T> T requireType(Class<T> type, Object value) {
+    static <T> T requireType(Class<T> type, Object value) {
         if (type.isInstance(value)) {
             return type.cast(value);
         } else {
@@ -0,0 +1,694 @@
+package plc.interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SwitchPoint;
+import java.lang.reflect.Array;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The compiling tier of {@link Interpreter.Engine#JIT}. The interpreter
+ * evaluates terms with the tree-walker and counts how often each one is
+ * evaluated. Once a term has been evaluated {@link #THRESHOLD} times it is
+ * compiled, along with its arguments, into a static method of a generated
+ * hidden class, which HotSpot then compiles and inlines like any other code.
+ *
+ * The standard library functions the {@link Compiler} has intrinsics for are
+ * compiled into direct calls on the assumption that their names still refer
+ * to them, which is checked once when compiling. The assumption is guarded by
+ * each name's {@link Symbol#binding()}, so if any of those names is defined or
+ * set afterwards the compiled code is discarded: the term is evaluated with
+ * the tree-walker again and recompiled once it is hot. Names defined or set
+ * within the term itself are always called through the scope.
+ *
+ * The class file is written directly, using version 49 so the verifier infers
+ * types itself and no stack map frames are needed. Terms that would not fit
+ * in a method are not compiled. Hidden classes are defined through
+ * reflection, as the build targets JVMs without them, and on those JVMs no
+ * term is compiled, so the engine evaluates like {@link
+ * Interpreter.Engine#TREE}.
+ */
+final class Jit {
+
+    /**
+     * The number of times a term is evaluated before it is compiled.
+     */
+    static final int THRESHOLD = 1000;
+
+    private static final Symbol ADD = Symbol.of("+");
+    private static final Symbol SUBTRACT = Symbol.of("-");
+    private static final Symbol MULTIPLY = Symbol.of("*");
+    private static final Symbol DIVIDE = Symbol.of("/");
+    private static final Symbol LESS = Symbol.of("<");
+    private static final Symbol LESS_EQUAL = Symbol.of("<=");
+    private static final Symbol GREATER = Symbol.of(">");
+    private static final Symbol GREATER_EQUAL = Symbol.of(">=");
+    private static final Symbol NOT = Symbol.of("not");
+    private static final Symbol AND = Symbol.of("and");
+    private static final Symbol OR = Symbol.of("or");
+    private static final Symbol WHILE = Symbol.of("while");
+    private static final Symbol DO = Symbol.of("do");
+    private static final Symbol DEFINE = Symbol.of("define");
+    private static final Symbol SET = Symbol.of("set!");
+    private static final Symbol FOR = Symbol.of("for");
+
+    private static final MethodType TYPE = MethodType.methodType(Object.class, Scope.class, Object[].class);
+    private static final MethodHandle FALLBACK;
+
+    /**
+     * Defines a hidden class in this package, of type {@code
+     * (byte[])MethodHandles.Lookup}, or null if the JVM has no hidden classes.
+     */
+    private static final MethodHandle DEFINE_HIDDEN = defineHiddenClass();
+
+    static {
+        try {
+            FALLBACK = MethodHandles.lookup().findVirtual(Jit.class, "fallback",
+                    MethodType.methodType(Object.class, Profile.class, Scope.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle defineHiddenClass() {
+        try {
+            Class<?> options = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            MethodHandle define = MethodHandles.publicLookup().findVirtual(MethodHandles.Lookup.class,
+                    "defineHiddenClass", MethodType.methodType(MethodHandles.Lookup.class,
+                            byte[].class, boolean.class, Array.newInstance(options, 0).getClass()));
+            return MethodHandles.insertArguments(define, 2, true, Array.newInstance(options, 0))
+                    .bindTo(MethodHandles.lookup());
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private final Interpreter interpreter;
+
+    Jit(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * The invocation counter and compiled code of a term, which is stored on
+     * the term for the interpreter that profiled it.
+     */
+    static final class Profile {
+
+        private final Jit jit;
+        private final Ast.Term ast;
+        private int count = 0;
+        private MethodHandle code;
+
+        private Profile(Jit jit, Ast.Term ast) {
+            this.jit = jit;
+            this.ast = ast;
+        }
+
+        boolean isCompiled() {
+            return code != null;
+        }
+
+    }
+
+    /**
+     * Returns the profile of the term for this interpreter.
+     */
+    Profile profile(Ast.Term ast) {
+        if (ast.compiled instanceof Profile && ((Profile) ast.compiled).jit == this) {
+            return (Profile) ast.compiled;
+        }
+        Profile profile = new Profile(this, ast);
+        ast.compiled = profile;
+        return profile;
+    }
+
+    /**
+     * Evaluates the term in the interpreter's current scope, with its
+     * compiled code if it has been compiled.
+     */
+    Object eval(Ast.Term ast) {
+        Profile profile = profile(ast);
+        if (profile.code == null) {
+            if (++profile.count < THRESHOLD) {
+                return interpreter.eval(ast);
+            }
+            profile.count = 0;
+            profile.code = compile(profile, interpreter.scope);
+            if (profile.code == null) {
+                profile.count = Integer.MIN_VALUE;
+                return interpreter.eval(ast);
+            }
+        }
+        Scope scope = interpreter.scope;
+        try {
+            return (Object) profile.code.invokeExact(scope);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        } finally {
+            interpreter.scope = scope;
+        }
+    }
+
+    /**
+     * Called instead of the compiled code once an assumption it made no
+     * longer holds, which discards it and evaluates with the tree-walker.
+     */
+    private Object fallback(Profile profile, Scope scope) {
+        profile.code = null;
+        profile.count = 0;
+        interpreter.scope = scope;
+        return interpreter.eval(profile.ast);
+    }
+
+    /**
+     * Compiles the term for evaluation in the scope, returning a handle of
+     * type {@code (Scope)Object} or null if the term isn't worth compiling
+     * or the JVM has no hidden classes.
+     */
+    private MethodHandle compile(Profile profile, Scope scope) {
+        if (DEFINE_HIDDEN == null) {
+            return null;
+        }
+        Set<Symbol> rebound = new HashSet<>();
+        collectRebound(profile.ast, rebound);
+        Emitter emitter = new Emitter(interpreter, scope, rebound);
+        if (!emitter.isIntrinsic(profile.ast)) {
+            return null;
+        }
+        emitter.constant(interpreter);
+        byte[] bytes = emitter.emitClass(profile.ast);
+        if (bytes == null) {
+            return null;
+        }
+        MethodHandle code;
+        try {
+            MethodHandles.Lookup lookup = (MethodHandles.Lookup) DEFINE_HIDDEN.invokeExact(bytes);
+            code = lookup.findStatic(lookup.lookupClass(), "execute", TYPE);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new AssertionError(e);
+        }
+        code = MethodHandles.insertArguments(code, 1, (Object) emitter.constants.toArray());
+        MethodHandle fallback = FALLBACK.bindTo(this).bindTo(profile);
+        for (SwitchPoint binding : emitter.bindings) {
+            code = binding.guardWithTest(code, fallback);
+        }
+        return code;
+    }
+
+    /**
+     * Collects the names which may be defined or set while evaluating the
+     * AST, which are never assumed to refer to a standard library function.
+     */
+    private static void collectRebound(Ast ast, Set<Symbol> rebound) {
+        if (ast instanceof Ast.Term) {
+            Ast.Term term = (Ast.Term) ast;
+            Symbol name = term.getSymbol();
+            if ((name == DEFINE || name == SET || name == FOR) && !term.getArgs().isEmpty()) {
+                rebound.add(Interpreter.symbolOf(term.getArgs().get(0)));
+            }
+            term.getArgs().forEach(arg -> collectRebound(arg, rebound));
+        }
+    }
+
+    /**
+     * Calls the function for a term which isn't compiled into direct calls,
+     * the same way as the tree-walker.
+     */
+    static Object call(Scope scope, Object[] constants, int index) {
+        Interpreter interpreter = (Interpreter) constants[0];
+        Ast.Term ast = (Ast.Term) constants[index];
+        Function<List<Ast>, Object> function = Interpreter.lookupFunction(ast, scope);
+        interpreter.scope = scope;
+        return interpreter.call(function, ast.getArgs());
+    }
+
+    static BigDecimal number(Object value) {
+        return Interpreter.requireType(BigDecimal.class, value);
+    }
+
+    static boolean bool(Object value) {
+        return Interpreter.requireType(Boolean.class, value);
+    }
+
+    static Object not(Object value) {
+        return !bool(value);
+    }
+
+    static Object divide(Object[] values) {
+        return Interpreter.divide(values, 0, values.length);
+    }
+
+    static Object multiply(Object[] values) {
+        BigDecimal result = BigDecimal.ONE;
+        for (Object value : values) {
+            result = Numbers.multiply(result, number(value));
+        }
+        return result;
+    }
+
+    static Object compare(Object[] values, int operator) {
+        return VirtualMachine.compare(values, 0, values.length, operator);
+    }
+
+    /**
+     * Writes the class file for a term, with a single method {@code static
+     * Object execute(Scope scope, Object[] constants)}. Local 0 holds the
+     * current scope, and values are kept on the operand stack.
+     */
+    private static final class Emitter {
+
+        private static final String OBJECT = "java/lang/Object";
+        private static final String NUMBER = "java/math/BigDecimal";
+        private static final String SCOPE = "plc/interpreter/Scope";
+        private static final String SYMBOL = "plc/interpreter/Symbol";
+        private static final String JIT = "plc/interpreter/Jit";
+        private static final String NUMBERS = "plc/interpreter/Numbers";
+        private static final String INTERPRETER = "plc/interpreter/Interpreter";
+        private static final String LOOKUP = "(L" + SYMBOL + ";)L" + OBJECT + ";";
+        private static final String LOOKUP_ADDRESS = "(IIL" + SYMBOL + ";)L" + OBJECT + ";";
+        private static final String UNARY = "(L" + NUMBER + ";)L" + NUMBER + ";";
+        private static final String BINARY = "(L" + NUMBER + ";L" + NUMBER + ";)L" + NUMBER + ";";
+
+        private final Interpreter interpreter;
+        private final Scope scope;
+        private final Set<Symbol> rebound;
+        private final List<Object> constants = new ArrayList<>();
+        private final Set<SwitchPoint> bindings = new LinkedHashSet<>();
+
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int poolSize = 1;
+
+        private byte[] code = new byte[256];
+        private int size = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int locals = 2;
+        private boolean overflow = false;
+
+        private Emitter(Interpreter interpreter, Scope scope, Set<Symbol> rebound) {
+            this.interpreter = interpreter;
+            this.scope = scope;
+            this.rebound = rebound;
+        }
+
+        /**
+         * Returns true if the term can be compiled into direct calls, which
+         * requires its name to refer to the standard library function now.
+         * Records the assumption if it can.
+         */
+        private boolean isIntrinsic(Ast.Term ast) {
+            Symbol name = ast.getSymbol();
+            List<Ast> args = ast.getArgs();
+            Object builtin = interpreter.getBuiltin(name);
+            if (builtin == null || rebound.contains(name)) {
+                return false;
+            } else if (!(name == ADD || name == MULTIPLY
+                    || (name == SUBTRACT || name == DIVIDE) && !args.isEmpty()
+                    || name == LESS || name == LESS_EQUAL || name == GREATER || name == GREATER_EQUAL
+                    || name == NOT && args.size() == 1
+                    || name == AND || name == OR
+                    || name == WHILE && args.size() == 2
+                    || name == DO
+                    || (name == DEFINE || name == SET) && args.size() >= 2)) {
+                return false;
+            }
+            //the switch point must be taken before checking the binding
+            SwitchPoint binding = name.binding();
+            try {
+                if (scope.lookup(name) != builtin) {
+                    return false;
+                }
+            } catch (EvalException e) {
+                return false;
+            }
+            bindings.add(binding);
+            return true;
+        }
+
+        private byte[] emitClass(Ast.Term ast) {
+            emitTerm(ast, true);
+            op(0xB0, -1); //areturn
+            if (overflow || size > 0xFFFF || constants.size() > Short.MAX_VALUE) {
+                return null;
+            }
+            try {
+                int codeName = utf8("Code");
+                int methodName = utf8("execute");
+                int methodType = utf8(TYPE.toMethodDescriptorString());
+                int thisClass = classRef(JIT + "$Code");
+                int superClass = classRef(OBJECT);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(49);
+                out.writeShort(poolSize);
+                pool.flush();
+                poolBytes.writeTo(out);
+                out.writeShort(0x0030); //final, super
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(0); //interfaces
+                out.writeShort(0); //fields
+                out.writeShort(1); //methods
+                out.writeShort(0x0009); //public, static
+                out.writeShort(methodName);
+                out.writeShort(methodType);
+                out.writeShort(1);
+                out.writeShort(codeName);
+                out.writeInt(12 + size);
+                out.writeShort(maxStack);
+                out.writeShort(locals);
+                out.writeInt(size);
+                out.write(code, 0, size);
+                out.writeShort(0); //exception table
+                out.writeShort(0); //attributes
+                out.writeShort(0); //class attributes
+                out.flush();
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void emit(Ast ast) {
+            if (ast instanceof Ast.Term) {
+                Ast.Term term = (Ast.Term) ast;
+                emitTerm(term, isIntrinsic(term));
+            } else if (ast instanceof Ast.Identifier) {
+                Ast.Identifier identifier = (Ast.Identifier) ast;
+                op(0x2A, 1); //aload_0
+                if (identifier.depth == Ast.UNRESOLVED) {
+                    emitConstant(identifier.getSymbol(), SYMBOL);
+                    method(0xB6, SCOPE, "lookup", LOOKUP, -1);
+                } else {
+                    emitInt(identifier.depth);
+                    emitInt(identifier.slot);
+                    emitConstant(identifier.getSymbol(), SYMBOL);
+                    method(0xB6, SCOPE, "lookup", LOOKUP_ADDRESS, -3);
+                }
+            } else if (ast instanceof Ast.NumberLiteral) {
+                emitConstant(((Ast.NumberLiteral) ast).getValue(), null);
+            } else if (ast instanceof Ast.StringLiteral) {
+                emitConstant(((Ast.StringLiteral) ast).getValue(), null);
+            } else {
+                throw new AssertionError(ast.getClass());
+            }
+        }
+
+        private void emitTerm(Ast.Term ast, boolean intrinsic) {
+            if (!intrinsic) {
+                op(0x2A, 1); //aload_0
+                op(0x2B, 1); //aload_1
+                emitInt(constant(ast));
+                method(0xB8, JIT, "call", "(L" + SCOPE + ";[L" + OBJECT + ";I)L" + OBJECT + ";", -2);
+                return;
+            }
+            Symbol name = ast.getSymbol();
+            List<Ast> args = ast.getArgs();
+            if (name == ADD) {
+                field(NUMBER, "ZERO", "L" + NUMBER + ";");
+                for (Ast arg : args) {
+                    emitNumber(arg);
+                    method(0xB8, NUMBERS, "add", BINARY, -1);
+                }
+            } else if (name == SUBTRACT) {
+                emitNumber(args.get(0));
+                if (args.size() == 1) {
+                    method(0xB8, NUMBERS, "negate", UNARY, 0);
+                }
+                for (Ast arg : args.subList(1, args.size())) {
+                    emitNumber(arg);
+                    method(0xB8, NUMBERS, "subtract", BINARY, -1);
+                }
+            } else if (name == DIVIDE) {
+                //every argument is evaluated before dividing, like the / function
+                emitArray(args, true);
+                method(0xB8, JIT, "divide", "([L" + OBJECT + ";)L" + OBJECT + ";", 0);
+            } else if (name == MULTIPLY) {
+                emitArray(args);
+                method(0xB8, JIT, "multiply", "([L" + OBJECT + ";)L" + OBJECT + ";", 0);
+            } else if (name == LESS || name == LESS_EQUAL || name == GREATER || name == GREATER_EQUAL) {
+                emitArray(args);
+                emitInt(name == LESS ? Bytecode.LESS : name == LESS_EQUAL ? Bytecode.LESS_EQUAL
+                        : name == GREATER ? Bytecode.GREATER : Bytecode.GREATER_EQUAL);
+                method(0xB8, JIT, "compare", "([L" + OBJECT + ";I)L" + OBJECT + ";", -1);
+            } else if (name == NOT) {
+                emit(args.get(0));
+                method(0xB8, JIT, "not", "(L" + OBJECT + ";)L" + OBJECT + ";", 0);
+            } else if (name == AND || name == OR) {
+                //and stops at the first false argument, or at the first true
+                List<Integer> exits = new ArrayList<>();
+                for (Ast arg : args) {
+                    emitBoolean(arg);
+                    exits.add(jump(name == AND ? 0x99 : 0x9A, -1)); //ifeq, ifne
+                }
+                field("java/lang/Boolean", name == AND ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+                int end = jump(0xA7, 0); //goto
+                stack--;
+                exits.forEach(exit -> patch(exit, size));
+                field("java/lang/Boolean", name == AND ? "FALSE" : "TRUE", "Ljava/lang/Boolean;");
+                patch(end, size);
+            } else if (name == WHILE) {
+                int condition = size;
+                emitBoolean(args.get(0));
+                int exit = jump(0x99, -1); //ifeq
+                emit(args.get(1));
+                op(0x57, -1); //pop
+                patch(jump(0xA7, 0), condition); //goto
+                patch(exit, size);
+                field(INTERPRETER, "VOID", "L" + OBJECT + ";");
+            } else if (name == DO) {
+                int parent = locals++;
+                op(0x2A, 1); //aload_0
+                local(0x3A, parent, -1); //astore
+                poolOp(0xBB, classRef(SCOPE), 1); //new
+                op(0x59, 1); //dup
+                op(0x2A, 1); //aload_0
+                method(0xB7, SCOPE, "<init>", "(L" + SCOPE + ";)V", -2);
+                op(0x4B, -1); //astore_0
+                if (args.isEmpty()) {
+                    field(INTERPRETER, "VOID", "L" + OBJECT + ";");
+                }
+                for (int i = 0; i < args.size(); i++) {
+                    if (i > 0) {
+                        op(0x57, -1); //pop
+                    }
+                    emit(args.get(i));
+                }
+                local(0x19, parent, 1); //aload
+                op(0x4B, -1); //astore_0
+            } else if (name == DEFINE || name == SET) {
+                op(0x2A, 1); //aload_0
+                emitConstant(Interpreter.symbolOf(args.get(0)), SYMBOL);
+                emit(args.get(1));
+                method(0xB6, SCOPE, name == DEFINE ? "define" : "set", "(L" + SYMBOL + ";L" + OBJECT + ";)V", -3);
+                field(INTERPRETER, "VOID", "L" + OBJECT + ";");
+            }
+        }
+
+        private void emitNumber(Ast ast) {
+            emit(ast);
+            method(0xB8, JIT, "number", "(L" + OBJECT + ";)L" + NUMBER + ";", 0);
+        }
+
+        private void emitBoolean(Ast ast) {
+            emit(ast);
+            method(0xB8, JIT, "bool", "(L" + OBJECT + ";)Z", 0);
+        }
+
+        /**
+         * Evaluates the arguments in order into a new array.
+         */
+        private void emitArray(List<Ast> args) {
+            emitArray(args, false);
+        }
+
+        /**
+         * Evaluates the arguments into a new array, checking that each is a
+         * number as soon as it is evaluated if {@code numbers} is true.
+         */
+        private void emitArray(List<Ast> args, boolean numbers) {
+            emitInt(args.size());
+            poolOp(0xBD, classRef(OBJECT), 0); //anewarray
+            for (int i = 0; i < args.size(); i++) {
+                op(0x59, 1); //dup
+                emitInt(i);
+                if (numbers) {
+                    emitNumber(args.get(i));
+                } else {
+                    emit(args.get(i));
+                }
+                op(0x53, -3); //aastore
+            }
+        }
+
+        private int constant(Object value) {
+            constants.add(value);
+            return constants.size() - 1;
+        }
+
+        private void emitConstant(Object value, String type) {
+            op(0x2B, 1); //aload_1
+            emitInt(constant(value));
+            op(0x32, -1); //aaload
+            if (type != null) {
+                poolOp(0xC0, classRef(type), 0); //checkcast
+            }
+        }
+
+        private void emitInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(0x03 + value, 1); //iconst
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(0x10, 1); //bipush
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(0x11, 1); //sipush
+                u2(value);
+            } else {
+                overflow = true;
+            }
+        }
+
+        private void field(String owner, String name, String type) {
+            poolOp(0xB2, ref(9, owner, name, type), 1); //getstatic
+        }
+
+        private void method(int opcode, String owner, String name, String type, int delta) {
+            poolOp(opcode, ref(10, owner, name, type), delta);
+        }
+
+        private void poolOp(int opcode, int index, int delta) {
+            op(opcode, delta);
+            u2(index);
+        }
+
+        private void local(int opcode, int index, int delta) {
+            op(opcode, delta);
+            overflow |= index > 0xFF;
+            u1(index);
+        }
+
+        /**
+         * Emits a branch to be patched, returning its position.
+         */
+        private int jump(int opcode, int delta) {
+            int position = size;
+            op(opcode, delta);
+            u2(0);
+            return position;
+        }
+
+        private void patch(int position, int target) {
+            int offset = target - position;
+            overflow |= offset < Short.MIN_VALUE || offset > Short.MAX_VALUE;
+            code[position + 1] = (byte) (offset >> 8);
+            code[position + 2] = (byte) offset;
+        }
+
+        private void op(int opcode, int delta) {
+            u1(opcode);
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void u1(int value) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, 2 * size);
+            }
+            code[size++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        private int utf8(String value) {
+            Integer index = entries.get("U" + value);
+            if (index != null) {
+                return index;
+            }
+            write(1, () -> pool.writeUTF(value));
+            entries.put("U" + value, poolSize - 1);
+            return poolSize - 1;
+        }
+
+        private int classRef(String name) {
+            Integer index = entries.get("C" + name);
+            if (index != null) {
+                return index;
+            }
+            int utf8 = utf8(name);
+            write(7, () -> pool.writeShort(utf8));
+            entries.put("C" + name, poolSize - 1);
+            return poolSize - 1;
+        }
+
+        /**
+         * Returns the index of a field (tag 9) or method (tag 10) reference.
+         */
+        private int ref(int tag, String owner, String name, String type) {
+            String key = tag + owner + "." + name + type;
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(type);
+            write(12, () -> {
+                pool.writeShort(nameIndex);
+                pool.writeShort(typeIndex);
+            });
+            int nameAndType = poolSize - 1;
+            write(tag, () -> {
+                pool.writeShort(ownerIndex);
+                pool.writeShort(nameAndType);
+            });
+            entries.put(key, poolSize - 1);
+            return poolSize - 1;
+        }
+
+        private interface Entry {
+
+            void write() throws IOException;
+
+        }
+
+        private void write(int tag, Entry entry) {
+            try {
+                pool.writeByte(tag);
+                entry.write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            overflow |= ++poolSize > 0xFFFF;
+        }
+
+    }
+
+}
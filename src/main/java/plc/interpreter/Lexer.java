@@ -1,7 +1,16 @@
 package plc.interpreter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * The lexer works through three main functions:
@@ -13,24 +22,150 @@ import java.util.List;
  * If the lexer fails to parse something (such as an unterminated string) you
  * should throw a {@link ParseException}.
  *
- * The {@link #peek(String...)} and {@link #match(String...)} functions are
- * helpers, they're not necessary but their use will make the implementation a
- * lot easier. Regex isn't the most performant way to go but it gets the job
- * done, and the focus here is on the concept.
+ * The {@link #peek(CharClass...)} and {@link #match(CharClass...)} functions
+ * are helpers, they're not necessary but their use will make the implementation
+ * a lot easier. Each {@link CharClass} is still described by a regex, but that
+ * regex is only used once to precompute a lookup table, so checking a
+ * character is a single bit test instead of compiling and running a pattern.
  */
 public final class Lexer {
 
     private final CharStream chars;
 
-    private Lexer(String input) {
-        chars = new CharStream(input);
+    private Lexer(CharStream chars) {
+        this.chars = chars;
     }
 
     /**
-     * Lexes the input and returns the list of tokens.
+     * Lexes the input and returns the list of tokens. The tokens share the
+     * input string and only create their literal when it is first needed.
      */
     public static List<Token> lex(String input) throws ParseException {
-        return new Lexer(input).lex();
+        return new Lexer(new SequenceCharStream(input)).lex();
+    }
+
+    /**
+     * Lexes the input into a {@link TokenBuffer}, which doesn't create an
+     * object per token. This is what the {@link Parser} uses.
+     */
+    static TokenBuffer lexPacked(CharSequence input) throws ParseException {
+        return lexPacked(input, 0, input.length());
+    }
+
+    /**
+     * Lexes the characters {@code [start, end)} of the input into a {@link
+     * TokenBuffer}, as if they were the entire input except that token
+     * indices are offsets into the whole input. The range should start and
+     * end between tokens, see {@link #split(CharSequence, int)}.
+     */
+    static TokenBuffer lexPacked(CharSequence input, int start, int end) throws ParseException {
+        TokenBuffer tokens = new TokenBuffer(input);
+        Lexer lexer = new Lexer(new SequenceCharStream(input, start, end));
+        while (lexer.skipWhitespace()) {
+            lexer.chars.emit(lexer.lexType(), tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the offsets splitting the input into chunks of at least {@code
+     * size} characters (except the last), starting with 0 and ending with the
+     * length of the input. Each split is at whitespace outside of any string
+     * literal, so lexing each chunk gives the same tokens as lexing the whole
+     * input, and where brackets are balanced, so the chunks usually hold whole
+     * top-level forms. This scans the input once without lexing it, following
+     * the rules for strings in {@link #lexString()}, and stops splitting at
+     * anything the lexer would reject.
+     */
+    static int[] split(CharSequence input, int size) {
+        int[] splits = new int[16];
+        int count = 1;
+        int next = size;
+        int depth = 0;
+        int i = 0;
+        scan:
+        while (i < input.length()) {
+            char c = input.charAt(i);
+            if (CharClass.QUOTE.matches(c)) {
+                int quotes = 0;
+                while (i < input.length() && CharClass.QUOTE.matches(input.charAt(i))) {
+                    quotes++;
+                    i++;
+                }
+                if (quotes == 2) {
+                    break;
+                }
+                while (i < input.length()) {
+                    if (CharClass.STRING_CHAR.matches(input.charAt(i))) {
+                        i++;
+                    } else if (CharClass.BACKSLASH.matches(input.charAt(i)) && i + 1 < input.length()
+                            && CharClass.ESCAPE.matches(input.charAt(i + 1))) {
+                        i += 2;
+                    } else if (CharClass.QUOTE.matches(input.charAt(i))) {
+                        while (i < input.length() && CharClass.QUOTE.matches(input.charAt(i))) {
+                            i++;
+                        }
+                        continue scan;
+                    } else {
+                        break scan;
+                    }
+                }
+                break;
+            }
+            if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            } else if (depth == 0 && i >= next && CharClass.WHITESPACE.matches(c)) {
+                if (count == splits.length) {
+                    splits = Arrays.copyOf(splits, 2 * count);
+                }
+                splits[count++] = i;
+                next = i + size;
+            }
+            i++;
+        }
+        splits = Arrays.copyOf(splits, count + 1);
+        splits[count] = input.length();
+        return splits;
+    }
+
+    /**
+     * Lexes the file by memory mapping it instead of reading it into a string
+     * first. The tokens refer back to the mapped file and their literals are
+     * only decoded when {@link Token#getLiteral()} is called, see {@link
+     * ByteCharSequence} for how the bytes are decoded. As with any int index,
+     * the file must be smaller than 2GB.
+     */
+    public static List<Token> lex(Path path) throws IOException, ParseException {
+        return new Lexer(new SequenceCharStream(map(path))).lex();
+    }
+
+    /**
+     * Maps the file read-only into memory. The mapping stays valid after the
+     * channel is closed.
+     */
+    static ByteCharSequence map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The file " + path + " is too large to lex (" + channel.size() + " bytes).");
+            }
+            return new ByteCharSequence(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Returns an iterator which lexes tokens from the input on demand. The
+     * input is read through a sliding window which only holds the token being
+     * lexed, so memory use is bounded by the largest token instead of the size
+     * of the input. Token indices are still absolute offsets into the input.
+     *
+     * Both {@link java.io.Reader} and {@link java.nio.CharBuffer} are {@link
+     * Readable}. An {@link IOException} from the input is rethrown as an
+     * {@link UncheckedIOException} from the iterator.
+     */
+    public static Iterator<Token> stream(Readable input) {
+        return new TokenIterator(new Lexer(new WindowCharStream(input)));
     }
 
     /**
@@ -41,18 +176,22 @@ public final class Lexer {
     private List<Token> lex() throws ParseException {
 
         List<Token> tList = new ArrayList<>();
-        while (chars.has(0)) {
-            if (!match("[ \n\r\t]")) {
-//            if(!match("\n","\r","\t"," ")){
-                tList.add(lexToken());
-            } else {
-                chars.reset();
-            }
+        while (skipWhitespace()) {
+            tList.add(lexToken());
         }
         return tList;
 
     }
 
+    /**
+     * Skips any whitespace, returning true if there is another token to lex.
+     */
+    private boolean skipWhitespace() {
+        if (match(CharClass.WHITESPACE)) {
+            chars.reset();
+        }
+        return chars.has(0);
+    }
 
     /**
      * Lexes the next token. It may be helpful to have this call other methods,
@@ -91,14 +230,22 @@ public final class Lexer {
      * </pre>
      */
 
-    // should use peek here
     private Token lexToken() throws ParseException {
+        return chars.emit(lexType());
+    }
 
-        if(peek("[0-9]") || peek("[+-]","[0-9]") || peek("[.]")){
+    /**
+     * Lexes the next token without emitting it, returning its type. The literal
+     * is left in the {@link CharStream} for the caller to emit.
+     */
+    // should use peek here
+    private Token.Type lexType() throws ParseException {
+
+        if(peek(CharClass.DIGIT) || peek(CharClass.SIGN, CharClass.DIGIT) || peek(CharClass.DECIMAL_POINT)){
             return lexNumber();
-        } else if (match("[A-Za-z_+\\-*/:!?<>=]") || match("[.]", "[A-Za-z0-9_+\\-*/.:!?<>=]")) {
+        } else if (match(CharClass.IDENTIFIER_START) || match(CharClass.DECIMAL_POINT, CharClass.IDENTIFIER_PART)) {
             return lexIdentifier();
-        } else if (peek("\"")) {
+        } else if (peek(CharClass.QUOTE)) {
             return lexString();
         } else {
             return lexOperator();
@@ -107,56 +254,56 @@ public final class Lexer {
 
     }
 
-    private Token lexNumber() throws ParseException{
+    private Token.Type lexNumber() throws ParseException{
 
-        if(match("[+-]","[0-9]")) ;
-        else if (match("[0-9]")) ;
+        if(match(CharClass.SIGN, CharClass.DIGIT)) ;
+        else if (match(CharClass.DIGIT)) ;
         else throw new ParseException("starts with decimal", chars.index);
 
         int decimal = 0;
-        while (peek("[.]","[0-9]") || match("[0-9]")){
-            if(match("[.]","[0-9]")){
+        while (peek(CharClass.DECIMAL_POINT, CharClass.DIGIT) || match(CharClass.DIGIT)){
+            if(match(CharClass.DECIMAL_POINT, CharClass.DIGIT)){
                 decimal++;
             }
         }
         if(decimal>1){
             throw new ParseException("more than one decimal", chars.index);
         }
-        return chars.emit(Token.Type.NUMBER);
+        return Token.Type.NUMBER;
     }
 
-    private Token lexIdentifier() {
-        while (match("[A-Za-z0-9_+\\-*/.:!?<>=]")) ;
-        return chars.emit(Token.Type.IDENTIFIER);
+    private Token.Type lexIdentifier() {
+        while (match(CharClass.IDENTIFIER_PART)) ;
+        return Token.Type.IDENTIFIER;
         // need exception error?
     }
 
     //needs to be able to read all chars, not just listed
-    private Token lexString() throws ParseException {
-        match("\"");
-        if(chars.input.length()==2){ // find better soln
-            return chars.emit(Token.Type.STRING);
+    private Token.Type lexString() throws ParseException {
+        match(CharClass.QUOTE);
+        if(chars.isLength(2)){ // find better soln
+            return Token.Type.STRING;
         }
-        while (match("[A-Za-z,._;/!@#$%^&()~` 0-9]") || match("[\\\\]","[bnrt]")) ;
-        if (!match("\"")) {
+        while (match(CharClass.STRING_CHAR) || match(CharClass.BACKSLASH, CharClass.ESCAPE)) ;
+        if (!match(CharClass.QUOTE)) {
             throw new ParseException("no terminating end quote", chars.index);
         }
-        return chars.emit(Token.Type.STRING);
+        return Token.Type.STRING;
     }
 
-    private Token lexOperator() throws ParseException {
+    private Token.Type lexOperator() throws ParseException {
         chars.advance();
-        return chars.emit(Token.Type.OPERATOR);
+        return Token.Type.OPERATOR;
     }
 
     /**
-     * Returns true if the next sequence of characters match the given patterns,
-     * which should be a regex. For example, {@code peek("a", "b", "c")} would
-     * return true for the sequence {@code 'a', 'b', 'c'}
+     * Returns true if the next sequence of characters match the given
+     * character classes. For example, {@code peek(SIGN, DIGIT)} would return
+     * true for the sequence {@code '-', '1'}
      */
-    private boolean peek(String... patterns) {
+    private boolean peek(CharClass... patterns) {
         for (int i = 0; i < patterns.length; i++) {
-            if (!chars.has(i) || !String.valueOf(chars.get(i)).matches(patterns[i])) {
+            if (!chars.has(i) || !patterns[i].matches(chars.get(i))) {
                 return false;
             }
         }
@@ -167,7 +314,7 @@ public final class Lexer {
      * Returns true in the same way as peek, but also advances the CharStream to
      * if the characters matched.
      */
-    private boolean match(String... patterns) {
+    private boolean match(CharClass... patterns) {
         boolean check = false;
         while (peek(patterns)) {
             chars.advance();
@@ -178,32 +325,116 @@ public final class Lexer {
     }
 
     /**
-     * This is basically a sequence of characters. The index is used to maintain
-     * where in the input string the lexer currently is, and the builder
-     * accumulates characters into the literal value for the next token.
+     * The character classes used by the lexer. Each class is defined by the
+     * single character regex it used to be matched with, which is evaluated
+     * once against every ASCII character to build a 128 bit lookup table.
+     * None of the classes contain non-ASCII characters, so those never match.
      */
-    private static final class CharStream {
+    enum CharClass {
+
+        WHITESPACE("[ \n\r\t]"),
+        DIGIT("[0-9]"),
+        SIGN("[+-]"),
+        DECIMAL_POINT("[.]"),
+        IDENTIFIER_START("[A-Za-z_+\\-*/:!?<>=]"),
+        IDENTIFIER_PART("[A-Za-z0-9_+\\-*/.:!?<>=]"),
+        QUOTE("\""),
+        STRING_CHAR("[A-Za-z,._;/!@#$%^&()~` 0-9]"),
+        BACKSLASH("[\\\\]"),
+        ESCAPE("[bnrt]");
+
+        private final String regex;
+        private final long low;
+        private final long high;
+
+        CharClass(String regex) {
+            this.regex = regex;
+            long low = 0, high = 0;
+            for (char c = 0; c < 128; c++) {
+                if (String.valueOf(c).matches(regex)) {
+                    if (c < 64) {
+                        low |= 1L << c;
+                    } else {
+                        high |= 1L << c;
+                    }
+                }
+            }
+            this.low = low;
+            this.high = high;
+        }
 
-        private final String input;
-        private int index = 0;
-        private int length = 0;
+        /**
+         * Returns the regex this class was built from.
+         */
+        String getRegex() {
+            return regex;
+        }
 
-        private CharStream(String input) {
-            this.input = input;
+        /**
+         * Returns true if the character is in this class.
+         */
+        boolean matches(char c) {
+            return c < 64 ? (low & 1L << c) != 0 : c < 128 && (high & 1L << c) != 0;
         }
 
+    }
+
+    /**
+     * Pulls tokens from the lexer one at a time, see {@link #stream(Readable)}.
+     */
+    private static final class TokenIterator implements Iterator<Token> {
+
+        private final Lexer lexer;
+
+        private TokenIterator(Lexer lexer) {
+            this.lexer = lexer;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return lexer.skipWhitespace();
+        }
+
+        @Override
+        public Token next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return lexer.lexToken();
+        }
+
+    }
+
+    /**
+     * This is basically a sequence of characters. The index is used to maintain
+     * where in the input the lexer currently is, and the length is the number
+     * of characters consumed for the literal value of the next token.
+     */
+    private abstract static class CharStream {
+
+        int index = 0;
+        int length = 0;
+
         /**
          * Returns true if there is a character at index + offset.
          */
-        public boolean has(int offset) {
-            return index + offset < input.length();
-        }
+        public abstract boolean has(int offset);
 
         /**
          * Gets the character at index + offset.
          */
-        public char get(int offset) {
-            return input.charAt(index + offset);
+        public abstract char get(int offset);
+
+        /**
+         * Returns the last {@code length} characters consumed as a string.
+         */
+        abstract String literal();
+
+        /**
+         * Returns true if the entire input is exactly the given length.
+         */
+        public boolean isLength(int length) {
+            return (length == 0 || has(length - 1 - index)) && !has(length - index);
         }
 
         /**
@@ -229,10 +460,132 @@ public final class Lexer {
          */
         public Token emit(Token.Type type) {
             int start = index - length;
+            String literal = literal();
             reset(); //
-            return new Token(type, input.substring(start, index), start);
+            return new Token(type, literal, start);
+        }
+
+        /**
+         * Adds a token of the given type covering the built literal to the
+         * buffer, which must be for the same input, and resets the length.
+         */
+        public void emit(Token.Type type, TokenBuffer tokens) {
+            tokens.add(type, index - length, length);
+            reset();
         }
     }
 
-}
+    /**
+     * A {@link CharStream} over an input that is entirely in memory. Tokens are
+     * emitted as a range of the input instead of copying out their literal.
+     */
+    private static final class SequenceCharStream extends CharStream {
+
+        private final CharSequence input;
+        private final int end;
+
+        private SequenceCharStream(CharSequence input) {
+            this(input, 0, input.length());
+        }
+
+        private SequenceCharStream(CharSequence input, int start, int end) {
+            this.input = input;
+            this.index = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return index + offset < end;
+        }
+
+        @Override
+        public char get(int offset) {
+            return input.charAt(index + offset);
+        }
+
+        @Override
+        String literal() {
+            return input.subSequence(index - length, index).toString();
+        }
+
+        @Override
+        public Token emit(Token.Type type) {
+            int start = index - length;
+            Token token = new Token(type, input, start, length);
+            reset();
+            return token;
+        }
+
+    }
+
+    /**
+     * A {@link CharStream} over a {@link Readable}, which keeps a window of
+     * characters starting at the current literal. When the lexer needs a
+     * character past the end of the window the literal is moved to the front
+     * of the buffer (which only grows if the literal itself doesn't fit) and
+     * the rest of the buffer is refilled from the input.
+     */
+    private static final class WindowCharStream extends CharStream {
+
+        private static final int INITIAL_CAPACITY = 8192;
+
+        private final Readable input;
+        private CharBuffer buffer = CharBuffer.allocate(INITIAL_CAPACITY);
+        private int offset = 0; //absolute index of buffer position 0
+        private boolean eof = false;
+
+        private WindowCharStream(Readable input) {
+            this.input = input;
+            buffer.limit(0);
+        }
+
+        @Override
+        public boolean has(int offset) {
+            int position = index + offset - this.offset;
+            while (position >= buffer.limit() && !eof) {
+                position -= fill();
+            }
+            return position < buffer.limit();
+        }
+
+        @Override
+        public char get(int offset) {
+            return buffer.get(index + offset - this.offset);
+        }
 
+        @Override
+        String literal() {
+            int start = index - length - offset;
+            return new String(buffer.array(), start, length);
+        }
+
+        /**
+         * Discards characters before the current literal and reads more input,
+         * returning how many characters the window was shifted by.
+         */
+        private int fill() {
+            int start = index - length - offset;
+            int end = buffer.limit();
+            if (start == 0 && end == buffer.capacity()) {
+                CharBuffer grown = CharBuffer.allocate(buffer.capacity() * 2);
+                grown.put(buffer.array(), 0, end);
+                buffer = grown;
+            } else {
+                System.arraycopy(buffer.array(), start, buffer.array(), 0, end - start);
+                buffer.position(end - start);
+            }
+            buffer.limit(buffer.capacity());
+            offset += start;
+            try {
+                eof = input.read(buffer) < 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.flip();
+            return start;
+        }
+
+    }
+
+}
@@ -0,0 +1,99 @@
+package plc.interpreter;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Arithmetic on Whisp numbers, which are always {@link BigDecimal}s. Most
+ * numbers in a program are small integers, such as loop counters, so when
+ * both operands are integers with at most 18 digits the result is computed
+ * with {@code long} arithmetic, checking for overflow like {@link
+ * Math#addExact(long, long)}, and small results are shared from a cache. On
+ * overflow, or for fractional operands, the {@link BigDecimal} operation is
+ * used instead. Either way the result has the same value and scale.
+ */
+final class Numbers {
+
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final BigDecimal[] CACHE = new BigDecimal[CACHE_HIGH - CACHE_LOW + 1];
+    private static final BigDecimal MAX_SMALL = BigDecimal.valueOf(999_999_999_999_999_999L);
+    private static final BigDecimal MIN_SMALL = MAX_SMALL.negate();
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = BigDecimal.valueOf(CACHE_LOW + i);
+        }
+    }
+
+    private Numbers() {}
+
+    /**
+     * Returns the number with scale 0, which is shared if it is small.
+     */
+    static BigDecimal valueOf(long value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[(int) value - CACHE_LOW];
+        }
+        return BigDecimal.valueOf(value);
+    }
+
+    /**
+     * Returns true if the number is an integer with at most 18 digits, so its
+     * magnitude is less than 10^18 and sums, differences and remainders of
+     * two such numbers can't overflow a {@code long}. Comparing with integers
+     * of the same scale only compares longs, unlike computing the precision.
+     */
+    private static boolean isSmall(BigDecimal value) {
+        return value.scale() == 0 && value.compareTo(MAX_SMALL) <= 0 && value.compareTo(MIN_SMALL) >= 0;
+    }
+
+    static BigDecimal add(BigDecimal left, BigDecimal right) {
+        if (isSmall(left) && isSmall(right)) {
+            return valueOf(left.longValue() + right.longValue());
+        }
+        return left.add(right);
+    }
+
+    static BigDecimal subtract(BigDecimal left, BigDecimal right) {
+        if (isSmall(left) && isSmall(right)) {
+            return valueOf(left.longValue() - right.longValue());
+        }
+        return left.subtract(right);
+    }
+
+    static BigDecimal negate(BigDecimal value) {
+        if (isSmall(value)) {
+            return valueOf(-value.longValue());
+        }
+        return value.negate();
+    }
+
+    static BigDecimal multiply(BigDecimal left, BigDecimal right) {
+        if (isSmall(left) && isSmall(right)) {
+            try {
+                return valueOf(Math.multiplyExact(left.longValue(), right.longValue()));
+            } catch (ArithmeticException e) {
+                return left.multiply(right);
+            }
+        }
+        return left.multiply(right);
+    }
+
+    /**
+     * Divides to an integer, rounding half to even, which is how the {@code /}
+     * function divides.
+     */
+    static BigDecimal divide(BigDecimal left, BigDecimal right) {
+        if (isSmall(left) && isSmall(right) && right.signum() != 0) {
+            long x = left.longValue(), y = right.longValue();
+            long quotient = x / y, remainder = Math.abs(x % y), divisor = Math.abs(y);
+            if (2 * remainder > divisor || 2 * remainder == divisor && (quotient & 1) != 0) {
+                quotient += (x < 0) == (y < 0) ? 1 : -1;
+            }
+            return valueOf(quotient);
+        }
+        return left.divide(right, 0, RoundingMode.HALF_EVEN);
+    }
+
+}
@@ -0,0 +1,189 @@
+package plc.interpreter;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Folds constant expressions in an AST before it is evaluated. A term calling
+ * one of the pure standard library functions below with only literal
+ * arguments (or {@code true} and {@code false}) is replaced by the literal it
+ * evaluates to, working from the innermost terms out, so {@code (+ 1 2 (* 3
+ * 4))} becomes {@code 15}. The arithmetic functions also fold a run of two or
+ * more literals at the start of their arguments, so {@code (+ 1 2 x)} becomes
+ * {@code (+ 3 x)}.
+ *
+ * The results are computed by the standard library functions themselves, so
+ * they are identical to evaluating the term. Terms that fail to evaluate are
+ * left alone to fail when they are evaluated. A name is only folded if it
+ * still refers to the standard library in the scope the AST will be evaluated
+ * in, so earlier forms and the root scope can redefine it, and the AST itself
+ * doesn't define or set it.
+ *
+ * No engine runs the optimizer on its own. To use it, optimize each top-level
+ * form against the interpreter's scope just before evaluating it:
+ *
+ * <pre>{@code
+ * interpreter.eval(optimizer.optimize(form, interpreter.scope));
+ * }</pre>
+ *
+ * The folded terms are new ASTs, so the result is resolved again with the
+ * {@link Resolver}. If another thread can redefine a standard library name
+ * in the scope, folding is only safe if it can't do so between optimizing and
+ * evaluating a form.
+ */
+public final class Optimizer {
+
+    private static final Symbol ADD = Symbol.of("+");
+    private static final Symbol SUBTRACT = Symbol.of("-");
+    private static final Symbol MULTIPLY = Symbol.of("*");
+    private static final Symbol DIVIDE = Symbol.of("/");
+    private static final Symbol TRUE = Symbol.of("true");
+    private static final Symbol FALSE = Symbol.of("false");
+    private static final Symbol DEFINE = Symbol.of("define");
+    private static final Symbol SET = Symbol.of("set!");
+    private static final Symbol FOR = Symbol.of("for");
+
+    private static final Set<Symbol> PURE = new HashSet<>(Arrays.asList(
+            ADD, SUBTRACT, MULTIPLY, DIVIDE,
+            Symbol.of("<"), Symbol.of("<="), Symbol.of(">"), Symbol.of(">="),
+            Symbol.of("not"), Symbol.of("and"), Symbol.of("or")
+    ));
+
+    /**
+     * Evaluates the terms being folded. The pure functions don't use the
+     * output or modify the scope, so it can be shared.
+     */
+    private static final Interpreter INTERPRETER = new Interpreter(new PrintWriter(new StringWriter()), new Scope(null));
+
+    private final Set<Symbol> rebound = new HashSet<>();
+    private Scope scope;
+    private int eliminated = 0;
+
+    /**
+     * Returns the optimized AST for evaluating in the scope, which may be the
+     * same AST if nothing could be folded. The given AST is not modified.
+     */
+    public Ast optimize(Ast ast, Scope scope) {
+        rebound.clear();
+        this.scope = scope;
+        try {
+            collectRebound(ast);
+            Ast result = fold(ast);
+            if (result != ast) {
+                Resolver.resolve(result);
+            }
+            return result;
+        } finally {
+            this.scope = null;
+        }
+    }
+
+    /**
+     * Returns the total number of nodes eliminated by this optimizer.
+     */
+    public int getEliminated() {
+        return eliminated;
+    }
+
+    private void collectRebound(Ast ast) {
+        if (ast instanceof Ast.Term) {
+            Ast.Term term = (Ast.Term) ast;
+            Symbol name = term.getSymbol();
+            if ((name == DEFINE || name == SET || name == FOR) && !term.getArgs().isEmpty()) {
+                rebound.add(Interpreter.symbolOf(term.getArgs().get(0)));
+            }
+            term.getArgs().forEach(this::collectRebound);
+        }
+    }
+
+    private Ast fold(Ast ast) {
+        if (!(ast instanceof Ast.Term)) {
+            return ast;
+        }
+        Ast.Term term = (Ast.Term) ast;
+        List<Ast> args = new ArrayList<>(term.getArgs().size());
+        boolean changed = false;
+        for (Ast arg : term.getArgs()) {
+            Ast folded = fold(arg);
+            changed |= folded != arg;
+            args.add(folded);
+        }
+        Symbol name = term.getSymbol();
+        if (!PURE.contains(name) || !isStandard(name)) {
+            return changed ? new Ast.Term(name, args) : term;
+        }
+        int constants = 0;
+        while (constants < args.size() && isConstant(args.get(constants))) {
+            constants++;
+        }
+        if (constants == args.size()) {
+            Ast result = evaluate(new Ast.Term(name, args));
+            if (result != null) {
+                eliminated += args.size();
+                return result;
+            }
+        } else if (constants >= 2 && (name == ADD || name == SUBTRACT || name == MULTIPLY || name == DIVIDE)) {
+            Ast result = evaluate(new Ast.Term(name, args.subList(0, constants)));
+            if (result != null) {
+                eliminated += constants - 1;
+                List<Ast> remaining = new ArrayList<>(args.size() - constants + 1);
+                remaining.add(result);
+                remaining.addAll(args.subList(constants, args.size()));
+                return new Ast.Term(name, remaining);
+            }
+        }
+        return changed ? new Ast.Term(name, args) : term;
+    }
+
+    private boolean isConstant(Ast ast) {
+        if (ast instanceof Ast.Identifier) {
+            Symbol name = ((Ast.Identifier) ast).getSymbol();
+            return (name == TRUE || name == FALSE) && isStandard(name);
+        }
+        return ast instanceof Ast.NumberLiteral || ast instanceof Ast.StringLiteral;
+    }
+
+    /**
+     * Returns true if the name refers to the standard library value in the
+     * scope, and the AST doesn't define or set it.
+     */
+    private boolean isStandard(Symbol name) {
+        if (rebound.contains(name)) {
+            return false;
+        }
+        try {
+            return Objects.equals(scope.lookup(name), INTERPRETER.getBuiltin(name));
+        } catch (EvalException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Evaluates the term, returning the AST for its result or null if it
+     * fails or has no literal form.
+     */
+    private Ast evaluate(Ast.Term term) {
+        Object result;
+        try {
+            synchronized (INTERPRETER) {
+                result = INTERPRETER.eval(term);
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (result instanceof BigDecimal) {
+            return new Ast.NumberLiteral((BigDecimal) result);
+        } else if (result instanceof Boolean && isStandard((Boolean) result ? TRUE : FALSE)) {
+            return new Ast.Identifier((Boolean) result ? TRUE : FALSE);
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,338 @@
+package plc.interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches parsed ASTs on disk, so parsing a source that was parsed before only
+ * reads the AST back instead of lexing and parsing it again. Entries are files
+ * in the cache directory named by the SHA-256 hash of the source and the
+ * {@link #VERSION} of the format, so a changed source or format simply misses
+ * the cache. Entries are written to a temporary file and moved into place, so
+ * concurrent runs never see a partial entry, and an entry that can't be read
+ * is treated as a miss and written again.
+ *
+ * The format is a header followed by the names used in the AST, so each is
+ * only stored once, and the nodes in pre-order:
+ *
+ * <pre>
+ * file       = "WHSP" version:int symbols:varint name* node
+ * name       = length:varint utf8-bytes
+ * node       = TERM symbol:varint args:varint node*
+ *            | IDENTIFIER symbol:varint
+ *            | NUMBER scale:zigzag-varint length:varint unscaled-bytes
+ *            | STRING length:varint utf8-bytes
+ * </pre>
+ *
+ * Nodes are written and read with an explicit stack like the {@link Parser},
+ * so deeply nested ASTs don't overflow the Java stack. Sources are parsed
+ * with {@link Parser#parse(String)}, and any {@link ParseException} is thrown
+ * without caching anything. Lexical addresses aren't stored, so ASTs read
+ * from the cache are resolved again like the parser's.
+ */
+public final class ParseCache {
+
+    static final int VERSION = 1;
+
+    private static final int MAGIC = 0x57485350;
+    private static final byte TERM = 0;
+    private static final byte IDENTIFIER = 1;
+    private static final byte NUMBER = 2;
+    private static final byte STRING = 3;
+
+    private final Path directory;
+    private int hits = 0;
+    private int misses = 0;
+
+    public ParseCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the AST of the file, from the cache if it has been parsed before.
+     */
+    public Ast parse(Path path) throws IOException {
+        return parse(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the AST of the input, from the cache if it has been parsed
+     * before.
+     */
+    public Ast parse(String input) throws IOException {
+        Path entry = directory.resolve(key(input));
+        Ast ast = read(entry);
+        if (ast != null) {
+            hits++;
+            Resolver.resolve(ast);
+            return ast;
+        }
+        misses++;
+        ast = Parser.parse(input);
+        write(entry, encode(ast));
+        return ast;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the file name for the input, which is the hex SHA-256 hash of
+     * its UTF-8 bytes and the format version.
+     */
+    static String key(String input) {
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(input.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        StringBuilder builder = new StringBuilder(hash.length * 2 + 8);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.append(".v").append(VERSION).append(".ast").toString();
+    }
+
+    /**
+     * Memory maps and decodes the entry, returning null if it doesn't exist or
+     * can't be decoded.
+     */
+    private static Ast read(Path entry) throws IOException {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private void write(Path entry, byte[] bytes) throws IOException {
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+        try {
+            Files.write(temporary, bytes);
+            try {
+                Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Encodes the AST in the format described above.
+     */
+    static byte[] encode(Ast ast) {
+        Map<Symbol, Integer> symbols = new HashMap<>();
+        List<Symbol> names = new ArrayList<>();
+        ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+        List<Ast> stack = new ArrayList<>();
+        stack.add(ast);
+        while (!stack.isEmpty()) {
+            Ast node = stack.remove(stack.size() - 1);
+            if (node instanceof Ast.Term) {
+                Ast.Term term = (Ast.Term) node;
+                nodes.write(TERM);
+                writeVarint(nodes, symbol(symbols, names, term.getSymbol()));
+                writeVarint(nodes, term.getArgs().size());
+                for (int i = term.getArgs().size() - 1; i >= 0; i--) {
+                    stack.add(term.getArgs().get(i));
+                }
+            } else if (node instanceof Ast.Identifier) {
+                nodes.write(IDENTIFIER);
+                writeVarint(nodes, symbol(symbols, names, ((Ast.Identifier) node).getSymbol()));
+            } else if (node instanceof Ast.NumberLiteral) {
+                BigDecimal value = ((Ast.NumberLiteral) node).getValue();
+                nodes.write(NUMBER);
+                writeVarint(nodes, (value.scale() << 1) ^ (value.scale() >> 31));
+                writeBytes(nodes, value.unscaledValue().toByteArray());
+            } else if (node instanceof Ast.StringLiteral) {
+                nodes.write(STRING);
+                writeBytes(nodes, ((Ast.StringLiteral) node).getValue().getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new AssertionError(node.getClass());
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(nodes.size() + 16 * names.size() + 16);
+        writeInt(out, MAGIC);
+        writeInt(out, VERSION);
+        writeVarint(out, names.size());
+        for (Symbol name : names) {
+            writeBytes(out, name.getName().getBytes(StandardCharsets.UTF_8));
+        }
+        out.write(nodes.toByteArray(), 0, nodes.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes an AST from the buffer, throwing an {@link
+     * IllegalArgumentException} (or an exception from reading past the end of
+     * the buffer) if it isn't in the format described above.
+     */
+    static Ast decode(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IllegalArgumentException("Not a version " + VERSION + " AST.");
+        }
+        int size = readVarint(buffer);
+        if (size < 0 || size > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid symbol count " + size + ".");
+        }
+        Symbol[] symbols = new Symbol[size];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = Symbol.of(new String(readBytes(buffer), StandardCharsets.UTF_8));
+        }
+        List<Symbol> names = new ArrayList<>();
+        List<List<Ast>> args = new ArrayList<>();
+        int[] counts = new int[16];
+        while (true) {
+            Ast ast;
+            byte tag = buffer.get();
+            if (tag == TERM) {
+                Symbol name = symbols[readVarint(buffer)];
+                int count = readVarint(buffer);
+                if (count < 0 || count > buffer.remaining()) {
+                    throw new IllegalArgumentException("Invalid argument count " + count + ".");
+                }
+                if (count > 0) {
+                    if (names.size() == counts.length) {
+                        counts = Arrays.copyOf(counts, 2 * counts.length);
+                    }
+                    counts[names.size()] = count;
+                    names.add(name);
+                    args.add(new ArrayList<>(count));
+                    continue;
+                }
+                ast = new Ast.Term(name, new ArrayList<>());
+            } else if (tag == IDENTIFIER) {
+                ast = new Ast.Identifier(symbols[readVarint(buffer)]);
+            } else if (tag == NUMBER) {
+                ast = new Ast.NumberLiteral(readNumber(buffer));
+            } else if (tag == STRING) {
+                ast = new Ast.StringLiteral(new String(readBytes(buffer), StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("Invalid tag " + tag + ".");
+            }
+            while (true) {
+                int last = names.size() - 1;
+                if (last < 0) {
+                    if (buffer.hasRemaining()) {
+                        throw new IllegalArgumentException("Unexpected data after the AST.");
+                    }
+                    return ast;
+                }
+                List<Ast> term = args.get(last);
+                term.add(ast);
+                if (term.size() < counts[last]) {
+                    break;
+                }
+                ast = new Ast.Term(names.remove(last), args.remove(last));
+            }
+        }
+    }
+
+    /**
+     * Reads a number, which is usually small enough to build from a long
+     * instead of the bytes of a {@link BigInteger}.
+     */
+    private static BigDecimal readNumber(ByteBuffer buffer) {
+        int zigzag = readVarint(buffer);
+        int scale = (zigzag >>> 1) ^ -(zigzag & 1);
+        int length = readVarint(buffer);
+        if (length < 1 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid length " + length + ".");
+        } else if (length > Long.BYTES) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new BigDecimal(new BigInteger(bytes), scale);
+        }
+        long unscaled = buffer.get();
+        for (int i = 1; i < length; i++) {
+            unscaled = (unscaled << 8) | (buffer.get() & 0xFF);
+        }
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    /**
+     * Returns the index of the symbol in the table, adding it if needed.
+     */
+    private static int symbol(Map<Symbol, Integer> symbols, List<Symbol> names, Symbol name) {
+        Integer index = symbols.get(name);
+        if (index == null) {
+            index = names.size();
+            symbols.put(name, index);
+            names.add(name);
+        }
+        return index;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid varint.");
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        int length = readVarint(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid length " + length + ".");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+}
@@ -1,9 +1,15 @@
 package plc.interpreter;
 
 import javax.swing.plaf.basic.BasicDesktopIconUI;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 
 /**
@@ -17,21 +23,103 @@ import java.util.List;
  *
  * This type of parser is called <em>recursive descent</em>. Each rule in our
  * grammar will have it's own function, and reference to other rules correspond
- * to calling that functions.
+ * to calling that functions. The exception is terms, which nest arbitrarily
+ * deep, so {@link #parseAst()} keeps the terms being parsed on an explicit
+ * stack rather than recursing for each one, and deeply nested input doesn't
+ * overflow the Java stack.
  */
 public final class Parser {
 
+    private static final Symbol SOURCE = Symbol.of("source");
+
+    /**
+     * The smallest chunk worth parsing on its own in {@link #parse(String,
+     * ForkJoinPool)}, below which splitting costs more than it saves.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
     private final TokenStream tokens;
 
-    private Parser(String input) {
-        tokens = new TokenStream(Lexer.lex(input));
+    private Parser(TokenBuffer tokens) {
+        this.tokens = new BufferTokenStream(tokens);
+    }
+
+    private Parser(Iterator<Token> tokens) {
+        this.tokens = new IteratorTokenStream(tokens);
     }
 
     /**
      * Parses the input and returns the AST
      */
     public static Ast parse(String input) {
-        return new Parser(input).parse();
+        return new Parser(Lexer.lexPacked(input)).parse();
+    }
+
+    /**
+     * Parses the file and returns the AST, lexing it straight from memory
+     * mapped bytes like {@link Lexer#lex(Path)}.
+     */
+    public static Ast parse(Path path) throws IOException {
+        return new Parser(Lexer.lexPacked(Lexer.map(path))).parse();
+    }
+
+    /**
+     * Parses the input like {@link #parse(String)}, but splits large inputs
+     * into chunks of whole top-level forms with {@link Lexer#split(CharSequence,
+     * int)} and lexes and parses the chunks concurrently on the pool. The
+     * forms of each chunk are joined back together in order, and token
+     * indices are offsets into the whole input as usual.
+     *
+     * A chunk only parses if it ends at the top level, in which case parsing
+     * the whole input would have reached the same point. If any chunk fails to
+     * lex or parse, the whole input is parsed again sequentially so the
+     * exception is exactly the one {@link #parse(String)} would throw. Inputs
+     * too small to split, or a pool with a single thread, are parsed
+     * sequentially to begin with.
+     */
+    public static Ast parse(String input, ForkJoinPool pool) {
+        if (pool.getParallelism() < 2) {
+            return parse(input);
+        }
+        return parse(input, pool, Math.max(CHUNK_SIZE, input.length() / (4 * pool.getParallelism())));
+    }
+
+    static Ast parse(String input, ForkJoinPool pool, int size) {
+        int[] splits = Lexer.split(input, size);
+        if (splits.length <= 2) {
+            return parse(input);
+        }
+        List<ForkJoinTask<List<Ast>>> tasks = new ArrayList<>(splits.length - 1);
+        for (int i = 0; i + 1 < splits.length; i++) {
+            int start = splits[i], end = splits[i + 1];
+            tasks.add(pool.submit(() -> new Parser(Lexer.lexPacked(input, start, end)).parseForms()));
+        }
+        List<Ast> forms = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                forms.addAll(tasks.get(i).join());
+            } catch (RuntimeException e) {
+                for (int j = i + 1; j < tasks.size(); j++) {
+                    tasks.get(j).cancel(false);
+                }
+                return parse(input);
+            }
+        }
+        return new Ast.Term(SOURCE, forms);
+    }
+
+    /**
+     * Returns an iterator which parses the top-level forms of the input one at
+     * a time, instead of one {@code source} term holding all of them. Tokens
+     * are lexed on demand with {@link Lexer#stream(Readable)}, so only the
+     * form being parsed is held in memory, and each form can be evaluated
+     * before the next one is read. The forms are the arguments {@link
+     * #parse(String)} would return, and a {@link ParseException} is thrown
+     * from {@link Iterator#next()} when the form containing the error is
+     * parsed.
+     */
+    public static Iterator<Ast> stream(Readable input) {
+        return new FormIterator(new Parser(Lexer.stream(input)));
     }
 
     /**
@@ -39,11 +127,26 @@ public final class Parser {
      * {@link Ast.Term} with the identifier {@code "source"}.
      */
     private Ast parse() {
+        return new Ast.Term(SOURCE, parseForms());
+    }
+
+    private List<Ast> parseForms() {
         List<Ast> parseList= new ArrayList<Ast>();
         while(tokens.has(0)) {
-            parseList.add(parseAst());
+            parseList.add(parseForm());
         }
-        return new Ast.Term("source", parseList);
+        return parseList;
+    }
+
+    /**
+     * Parses a top-level form and resolves the lexical addresses of its names
+     * with the {@link Resolver}, so the interpreter can read variables
+     * defined within it by address.
+     */
+    private Ast parseForm() {
+        Ast form = parseAst();
+        Resolver.resolve(form);
+        return form;
     }
 
     /**
@@ -65,7 +168,7 @@ public final class Parser {
      *         if (!match(Token.Type.IDENTIFIER)) {
      *             throw new ParseException("Expected the name of a function.");
      *         }
-     *         String name = tokens.get(-1).getLiteral();
+     *         Symbol name = tokens.getSymbol(-1);
      *         if (!match("(")) {
      *             throw new ParseException("Expected opening bra
      *         }
@@ -84,45 +187,68 @@ public final class Parser {
      * </pre>
      */
     private Ast parseAst() {
-//        System.out.println(tokens.get(-1).getLiteral());
-        if(peek(Token.Type.NUMBER)) {
-            return parseNumberLiteral();
-        }
-        else if(peek(Token.Type.IDENTIFIER)) {
-            return parseIdentifier();
-        }
-        else if(peek(Token.Type.STRING)) {
-            return parseStringLiteral();
-        }
-        else {
-                return parseTerm();
-
+        List<PartialTerm> stack = new ArrayList<>();
+        while (true) {
+            Ast ast = null;
+            if (peek(Token.Type.NUMBER)) {
+                ast = parseNumberLiteral();
+            } else if (peek(Token.Type.IDENTIFIER)) {
+                ast = parseIdentifier();
+            } else if (peek(Token.Type.STRING)) {
+                ast = parseStringLiteral();
+            } else {
+                stack.add(parseTermStart());
+            }
+            while (true) {
+                if (ast != null) {
+                    if (stack.isEmpty()) {
+                        return ast;
+                    }
+                    stack.get(stack.size() - 1).args.add(ast);
+                }
+                if (!peek(")") && !peek("]")) {
+                    break;
+                }
+                tokens.advance();
+                PartialTerm term = stack.remove(stack.size() - 1);
+                ast = new Ast.Term(term.name, term.args);
+            }
         }
     }
 
-    private Ast.Term parseTerm() {
+    /**
+     * Parses the opening bracket and name of a term, returning the term to
+     * add its arguments to as they are parsed.
+     */
+    private PartialTerm parseTermStart() {
         if (!match("(") && !match('[')) {
             throw new ParseException("Expected opening parentheses or square bracket", tokens.index);
         }
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected an identifier.", tokens.index);
         }
-        String name = tokens.get(-1).getLiteral();
-        List<Ast> args = new ArrayList<>();
-        while (!peek(")") && !peek("]")) {
-            args.add(parseAst());
-        }
-        if (!match(")") && !match("]")) {
-            throw new ParseException("Expected closing parenthesis or square bracket after argument.", tokens.index);
+        return new PartialTerm(tokens.getSymbol(-1));
+    }
+
+    /**
+     * A term whose closing bracket hasn't been reached yet.
+     */
+    private static final class PartialTerm {
+
+        private final Symbol name;
+        private final List<Ast> args = new ArrayList<>();
+
+        private PartialTerm(Symbol name) {
+            this.name = name;
         }
-        return new Ast.Term(name, args);
+
     }
 
     private Ast.Identifier parseIdentifier() {
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected Identifier.", tokens.index);
         }
-        return new Ast.Identifier(tokens.get(-1).getLiteral());
+        return new Ast.Identifier(tokens.getSymbol(-1));
 
     }
 
@@ -130,7 +256,7 @@ public final class Parser {
         if (!match(Token.Type.NUMBER)) {
             throw new ParseException("Expected Number", tokens.index);
             }
-        return new Ast.NumberLiteral(new BigDecimal(tokens.get(-1).getLiteral()));
+        return new Ast.NumberLiteral(new BigDecimal(tokens.getLiteral(-1)));
 
     }
 
@@ -138,26 +264,23 @@ public final class Parser {
         if(!match(Token.Type.STRING)) {
             throw new ParseException("Expected String", tokens.index);
         } // add more tests
-        String lit = tokens.get(-1).getLiteral();
-        lit = lit.replaceAll("\"","");
-        while(lit.contains("\\b")){
-            lit = lit.replace("\\b", "\b");
-        }
-        while(lit.contains("\\n")){
-            lit = lit.replace("\\n", "\n");
-        }
-        while(lit.contains("\\r")){
-            lit = lit.replace("\\r", "\r");
-        }
-        while(lit.contains("\\t")){
-            lit = lit.replace("\\t", "\t");
-        }
-//        while(lit.contains("\\")){
-//            lit = lit.replace("\\", "\"");
-//        }
-//        while(lit.contains("\\'")){
-//            lit = lit.replace("\\'", "\'");
-//        }
+        char[] chars = new char[tokens.getLength(-1)];
+        int length = 0;
+        for (int i = 0; i < chars.length; i++) {
+            char c = tokens.charAt(-1, i);
+            if (c == '"') {
+                continue;
+            } else if (c == '\\' && i + 1 < chars.length) {
+                switch (tokens.charAt(-1, i + 1)) {
+                    case 'b': c = '\b'; i++; break;
+                    case 'n': c = '\n'; i++; break;
+                    case 'r': c = '\r'; i++; break;
+                    case 't': c = '\t'; i++; break;
+                }
+            }
+            chars[length++] = c;
+        }
+        String lit = new String(chars, 0, length);
         return new Ast.StringLiteral(lit);
     }
 
@@ -174,12 +297,12 @@ public final class Parser {
     private boolean peek(Object... patterns) {
         for (int i = 0; i < patterns.length; i++) {
             if (patterns[i] instanceof Token.Type) {
-                if(!tokens.has(i) || tokens.get(i).getType() != patterns[i]) {
+                if(!tokens.has(i) || tokens.getType(i) != patterns[i]) {
                     return false;
                 }
             }
             else if (patterns[i] instanceof String) {
-                if(!tokens.has(i) || !tokens.get(i).getLiteral().equals((String)patterns[i])) {
+                if(!tokens.has(i) || !tokens.matches(i, (String)patterns[i])) {
                     return false;
                 }
             }
@@ -187,6 +310,18 @@ public final class Parser {
         return true; //TODO
     }
 
+    /**
+     * Single pattern versions of {@link #peek(Object...)}, which avoid creating
+     * the varargs array for the common case.
+     */
+    private boolean peek(Token.Type type) {
+        return tokens.has(0) && tokens.getType(0) == type;
+    }
+
+    private boolean peek(String literal) {
+        return tokens.has(0) && tokens.matches(0, literal);
+    }
+
     /**
      * As in the lexer, returns {@code true} if {@link #peek(Object...)} is true
      * and advances the token stream.
@@ -203,35 +338,229 @@ public final class Parser {
         }
     } //TODO
 
+    private boolean match(Token.Type type) {
+        if (peek(type)) {
+            tokens.advance();
+            return true;
+        }
+        return false;
+    }
 
-    private static final class TokenStream {
+    private boolean match(String literal) {
+        if (peek(literal)) {
+            tokens.advance();
+            return true;
+        }
+        return false;
+    }
 
-        private final List<Token> tokens;
-        private int index = 0;
+    /**
+     * The tokens being parsed. Only the current token and the ones before and
+     * after it are ever accessed, so this can be backed by the whole list of
+     * tokens or by tokens lexed on demand.
+     */
+    private abstract static class TokenStream {
 
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
-        }
+        int index = 0;
 
         /**
          * Returns true if there is a token at index + offset.
          */
-        public boolean has(int offset) {
-            return index + offset < tokens.size(); //TODO
-        }
+        public abstract boolean has(int offset);
 
         /**
          * Gets the token at index + offset.
          */
-        public Token get(int offset) {
-            return tokens.get(index+offset); //TODO
-        }
+        public abstract Token get(int offset);
+
+        /**
+         * Gets the type of the token at index + offset.
+         */
+        public abstract Token.Type getType(int offset);
+
+        /**
+         * Returns true if the literal of the token at index + offset is equal
+         * to the given string.
+         */
+        public abstract boolean matches(int offset, String literal);
+
+        /**
+         * Gets the literal of the token at index + offset.
+         */
+        public abstract String getLiteral(int offset);
+
+        /**
+         * Gets the interned symbol for the literal of the token at index +
+         * offset.
+         */
+        public abstract Symbol getSymbol(int offset);
+
+        /**
+         * Gets the length of the literal of the token at index + offset.
+         */
+        public abstract int getLength(int offset);
+
+        /**
+         * Gets a character of the literal of the token at index + offset.
+         */
+        public abstract char charAt(int offset, int i);
 
         /**
          * Advances to the next token, incrementing the index.
          */
         public void advance() {
-            index++; //TODO
+            index++;
+        }
+
+    }
+
+    /**
+     * A {@link TokenStream} read straight out of the packed {@link
+     * TokenBuffer} rather than creating a {@link Token} for each one.
+     */
+    private static final class BufferTokenStream extends TokenStream {
+
+        private final TokenBuffer tokens;
+
+        private BufferTokenStream(TokenBuffer tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return index + offset < tokens.size();
+        }
+
+        @Override
+        public Token get(int offset) {
+            return tokens.get(index + offset);
+        }
+
+        @Override
+        public Token.Type getType(int offset) {
+            return tokens.getType(index + offset);
+        }
+
+        @Override
+        public boolean matches(int offset, String literal) {
+            return tokens.matches(index + offset, literal);
+        }
+
+        @Override
+        public String getLiteral(int offset) {
+            return tokens.getLiteral(index + offset);
+        }
+
+        @Override
+        public Symbol getSymbol(int offset) {
+            return tokens.getSymbol(index + offset);
+        }
+
+        @Override
+        public int getLength(int offset) {
+            return tokens.getLength(index + offset);
+        }
+
+        @Override
+        public char charAt(int offset, int i) {
+            return tokens.charAt(index + offset, i);
+        }
+
+    }
+
+    /**
+     * A {@link TokenStream} pulling tokens from an iterator as they are
+     * needed, which only holds the previous token and the ones peeked at.
+     */
+    private static final class IteratorTokenStream extends TokenStream {
+
+        private final Iterator<Token> tokens;
+        private final List<Token> ahead = new ArrayList<>();
+        private Token previous;
+
+        private IteratorTokenStream(Iterator<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            if (offset < 0) {
+                return offset == -1 && previous != null;
+            }
+            while (ahead.size() <= offset && tokens.hasNext()) {
+                ahead.add(tokens.next());
+            }
+            return offset < ahead.size();
+        }
+
+        @Override
+        public Token get(int offset) {
+            if (!has(offset)) {
+                throw new IndexOutOfBoundsException("Token " + (index + offset) + " is not available.");
+            }
+            return offset < 0 ? previous : ahead.get(offset);
+        }
+
+        @Override
+        public Token.Type getType(int offset) {
+            return get(offset).getType();
+        }
+
+        @Override
+        public boolean matches(int offset, String literal) {
+            return get(offset).getLiteral().equals(literal);
+        }
+
+        @Override
+        public String getLiteral(int offset) {
+            return get(offset).getLiteral();
+        }
+
+        @Override
+        public Symbol getSymbol(int offset) {
+            return Symbol.of(get(offset).getLiteral());
+        }
+
+        @Override
+        public int getLength(int offset) {
+            return get(offset).getLength();
+        }
+
+        @Override
+        public char charAt(int offset, int i) {
+            return get(offset).getLiteral().charAt(i);
+        }
+
+        @Override
+        public void advance() {
+            previous = has(0) ? ahead.remove(0) : null;
+            index++;
+        }
+
+    }
+
+    /**
+     * Parses top-level forms one at a time, see {@link #stream(Readable)}.
+     */
+    private static final class FormIterator implements Iterator<Ast> {
+
+        private final Parser parser;
+
+        private FormIterator(Parser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return parser.tokens.has(0);
+        }
+
+        @Override
+        public Ast next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return parser.parseForm();
         }
 
     }
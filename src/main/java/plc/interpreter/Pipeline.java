@@ -0,0 +1,196 @@
+package plc.interpreter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs a script by parsing its top-level forms on a background thread while
+ * the calling thread evaluates them, so the time to run a large script is
+ * closer to the larger of the parse and evaluation times than their sum.
+ *
+ * The parser thread reads forms with {@link Parser#stream(Readable)} and hands
+ * them over through a bounded queue in batches of up to {@link #BATCH}, as
+ * waking the other thread for every form costs more than evaluating most
+ * forms. When the queue is full the parser waits for the interpreter to catch
+ * up, so only about {@code capacity} forms are held in memory ahead of
+ * evaluation. If parsing fails, the forms before the error are still
+ * evaluated and then the {@link ParseException} is thrown from {@link
+ * #run(Readable)}, as if the script had been evaluated one form at a time. If
+ * evaluation fails the parser thread is stopped.
+ *
+ * The interpreter is only used by the calling thread. The counters below add
+ * up over every run, and measure where the time went:
+ *
+ *  - parse time is spent lexing and parsing on the parser thread.
+ *  - blocked time is spent by the parser waiting for room in the queue,
+ *    which means evaluation is the bottleneck.
+ *  - eval time is spent evaluating forms.
+ *  - idle time is spent by the interpreter waiting for the next form, which
+ *    means parsing is the bottleneck.
+ */
+public final class Pipeline {
+
+    static final int BATCH = 64;
+    private static final Object END = new Object();
+
+    private final Interpreter interpreter;
+    private final int batch;
+    private final int capacity;
+    private long forms = 0;
+    private long evalNanos = 0;
+    private long idleNanos = 0;
+    private long parseNanos = 0;
+    private long blockedNanos = 0;
+
+    public Pipeline(Interpreter interpreter, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive, received " + capacity + ".");
+        }
+        this.interpreter = interpreter;
+        this.batch = Math.min(capacity, BATCH);
+        this.capacity = (capacity + batch - 1) / batch;
+    }
+
+    /**
+     * Parses and evaluates each top-level form of the input in order,
+     * returning the value of the last form or {@link Interpreter#VOID} if
+     * there are none.
+     */
+    public Object run(Readable input) throws InterruptedException {
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(capacity);
+        Producer producer = new Producer(input, queue, batch);
+        Thread thread = new Thread(producer, "whisp-parser");
+        thread.setDaemon(true);
+        thread.start();
+        Object result = Interpreter.VOID;
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                Object item = queue.take();
+                long taken = System.nanoTime();
+                idleNanos += taken - start;
+                if (item == END) {
+                    return result;
+                } else if (item instanceof Failure) {
+                    throw ((Failure) item).rethrow();
+                }
+                Ast[] batch = (Ast[]) item;
+                for (int i = 0; i < batch.length; i++) {
+                    result = interpreter.eval(batch[i]);
+                    batch[i] = null;
+                    forms++;
+                }
+                evalNanos += System.nanoTime() - taken;
+            }
+        } finally {
+            thread.interrupt();
+            parseNanos += producer.parseNanos;
+            blockedNanos += producer.blockedNanos;
+        }
+    }
+
+    /**
+     * Returns the number of forms evaluated.
+     */
+    public long getForms() {
+        return forms;
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    public long getBlockedNanos() {
+        return blockedNanos;
+    }
+
+    public long getEvalNanos() {
+        return evalNanos;
+    }
+
+    public long getIdleNanos() {
+        return idleNanos;
+    }
+
+    /**
+     * Parses the forms on the parser thread, putting them in the queue as
+     * arrays and ending with {@link #END} or a {@link Failure} after the forms
+     * parsed before it. The counters are only written by the parser thread,
+     * and are read after taking the last item from the queue (or, if
+     * evaluation failed, whenever the interpreter stopped).
+     */
+    private static final class Producer implements Runnable {
+
+        private final Readable input;
+        private final BlockingQueue<Object> queue;
+        private final int batch;
+        private volatile long parseNanos = 0;
+        private volatile long blockedNanos = 0;
+
+        private Producer(Readable input, BlockingQueue<Object> queue, int batch) {
+            this.input = input;
+            this.queue = queue;
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            List<Ast> forms = new ArrayList<>(batch);
+            try {
+                try {
+                    Iterator<Ast> iterator = Parser.stream(input);
+                    boolean more = true;
+                    while (more) {
+                        long start = System.nanoTime();
+                        while (forms.size() < batch && (more = iterator.hasNext())) {
+                            forms.add(iterator.next());
+                        }
+                        long parsed = System.nanoTime();
+                        parseNanos += parsed - start;
+                        put(forms);
+                        blockedNanos += System.nanoTime() - parsed;
+                    }
+                } catch (RuntimeException | Error e) {
+                    put(forms);
+                    queue.put(new Failure(e));
+                    return;
+                }
+                queue.put(END);
+            } catch (InterruptedException e) {
+                //The interpreter stopped, so nothing is waiting for the forms.
+            }
+        }
+
+        private void put(List<Ast> forms) throws InterruptedException {
+            if (!forms.isEmpty()) {
+                queue.put(forms.toArray(new Ast[0]));
+                forms.clear();
+            }
+        }
+
+    }
+
+    /**
+     * An exception thrown while parsing, to be rethrown by the interpreter.
+     */
+    private static final class Failure {
+
+        private final Throwable cause;
+
+        private Failure(Throwable cause) {
+            this.cause = cause;
+        }
+
+        private RuntimeException rethrow() {
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            return (RuntimeException) cause;
+        }
+
+    }
+
+}
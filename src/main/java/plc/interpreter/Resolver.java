@@ -0,0 +1,165 @@
+package plc.interpreter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes lexical addresses for the identifiers and term names in an AST, so
+ * the interpreter can read variables with {@link Scope#lookup(int, int,
+ * Symbol)} instead of searching each scope by name.
+ *
+ * The only forms that create scopes are {@code do} and {@code for}, and the
+ * only form that adds a variable is {@code define}. Each scope is numbered in
+ * the order its {@code define}s appear, and a name is resolved to the nearest
+ * enclosing scope which defines it anywhere in its body. Since a define may
+ * not have run yet (or at all) when the name is used, the address is checked
+ * when it is used and falls back to a lookup by name, which is also what
+ * happens for names defined outside of the AST.
+ *
+ * This assumes {@code do}, {@code for}, {@code define} and {@code set!} have
+ * their standard meaning.
+ *
+ * The {@link Parser} resolves every top-level form as it parses it, so only
+ * ASTs built some other way need to be passed to {@link #resolve(Ast)}.
+ */
+public final class Resolver {
+
+    private static final Symbol DO = Symbol.of("do");
+    private static final Symbol FOR = Symbol.of("for");
+    private static final Symbol DEFINE = Symbol.of("define");
+    private static final Symbol SET = Symbol.of("set!");
+    private static final Object END_FRAME = new Object();
+
+    private final List<Map<Symbol, Integer>> frames = new ArrayList<>();
+    private final Set<Ast> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private Resolver() {}
+
+    /**
+     * Resolves the addresses of every name in the AST.
+     */
+    public static void resolve(Ast ast) {
+        new Resolver().visit(ast);
+    }
+
+    /**
+     * Visits the AST with an explicit stack, like the {@link Parser}, so
+     * deeply nested ASTs don't overflow the Java stack. A frame is pushed
+     * when entering a {@code do} or {@code for} and popped when {@link
+     * #END_FRAME} is reached after its arguments.
+     */
+    private void visit(Ast root) {
+        List<Object> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Object item = stack.remove(stack.size() - 1);
+            if (item == END_FRAME) {
+                frames.remove(frames.size() - 1);
+            } else if (item instanceof Ast.Term) {
+                Ast.Term ast = (Ast.Term) item;
+                resolve(ast, ast.getSymbol());
+                List<Ast> args = ast.getArgs();
+                if (ast.getSymbol() == DO || ast.getSymbol() == FOR) {
+                    frames.add(declare(args));
+                    stack.add(END_FRAME);
+                    push(stack, args);
+                } else if (ast.getSymbol() == DEFINE || ast.getSymbol() == SET) {
+                    if (args.size() > 1) {
+                        stack.add(args.get(1));
+                    }
+                } else {
+                    push(stack, args);
+                }
+            } else if (item instanceof Ast.Identifier) {
+                resolve((Ast) item, ((Ast.Identifier) item).getSymbol());
+            }
+        }
+    }
+
+    /**
+     * Stores the address of the name in the term or identifier, or marks it
+     * unresolved if the same node was already visited with another address.
+     */
+    private void resolve(Ast ast, Symbol name) {
+        int[] address = address(name);
+        boolean first = visited.add(ast);
+        if (ast instanceof Ast.Term) {
+            Ast.Term term = (Ast.Term) ast;
+            if (first) {
+                term.depth = address[0];
+                term.slot = address[1];
+            } else if (term.depth != address[0] || term.slot != address[1]) {
+                term.depth = term.slot = Ast.UNRESOLVED;
+            }
+        } else {
+            Ast.Identifier identifier = (Ast.Identifier) ast;
+            if (first) {
+                identifier.depth = address[0];
+                identifier.slot = address[1];
+            } else if (identifier.depth != address[0] || identifier.slot != address[1]) {
+                identifier.depth = identifier.slot = Ast.UNRESOLVED;
+            }
+        }
+    }
+
+    /**
+     * Returns a frame of the variables defined by the arguments in the order
+     * they are defined, without entering nested scopes. The value of a define
+     * is evaluated before its name is defined, so names defined within it
+     * come first.
+     */
+    private static Map<Symbol, Integer> declare(List<Ast> args) {
+        Map<Symbol, Integer> frame = new HashMap<>();
+        List<Object> stack = new ArrayList<>();
+        push(stack, args);
+        while (!stack.isEmpty()) {
+            Object item = stack.remove(stack.size() - 1);
+            if (item instanceof Symbol) {
+                frame.putIfAbsent((Symbol) item, frame.size());
+            } else if (item instanceof Ast.Term) {
+                Ast.Term term = (Ast.Term) item;
+                if (term.getSymbol() == DO || term.getSymbol() == FOR) {
+                    continue;
+                } else if (term.getSymbol() == DEFINE) {
+                    if (!term.getArgs().isEmpty()) {
+                        stack.add(Interpreter.symbolOf(term.getArgs().get(0)));
+                    }
+                    if (term.getArgs().size() > 1) {
+                        stack.add(term.getArgs().get(1));
+                    }
+                } else {
+                    push(stack, term.getArgs());
+                }
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Pushes the ASTs so they are popped in order.
+     */
+    private static void push(List<Object> stack, List<Ast> asts) {
+        for (int i = asts.size() - 1; i >= 0; i--) {
+            stack.add(asts.get(i));
+        }
+    }
+
+    /**
+     * Returns the depth and slot of the nearest frame defining the name.
+     */
+    private int[] address(Symbol name) {
+        for (int depth = 0; depth < frames.size(); depth++) {
+            Integer slot = frames.get(frames.size() - 1 - depth).get(name);
+            if (slot != null) {
+                return new int[] {depth, slot};
+            }
+        }
+        return new int[] {Ast.UNRESOLVED, Ast.UNRESOLVED};
+    }
+
+}
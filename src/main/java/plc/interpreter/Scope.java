@@ -1,47 +1,367 @@
 package plc.interpreter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Variables are stored under their interned {@link Symbol}, so lookups hash
+ * the symbol's id and compare by identity rather than comparing names. The
+ * {@link String} overloads intern the name first.
+ *
+ * Each scope is a frame of slots, numbered in the order variables are
+ * defined. Small frames find a name by scanning the slots, larger ones keep a
+ * map from symbol to slot. {@link #lookup(int, int, Symbol)} reads a slot
+ * directly using an address computed by the {@link Resolver}. A scope can
+ * instead store its variables in a persistent {@link Hamt}, see {@link
+ * #persistent(Scope)} and {@link #fork()}, or in a {@link
+ * ConcurrentHashMap}, see {@link #concurrent(Scope)}.
+ *
+ * A scope can be frozen once it is fully defined, after which it is never
+ * modified and can be shared between threads. The standard library is one
+ * such scope, shared by every {@link Interpreter}, which is attached as the
+ * parent of each interpreter's root scope with {@link #attach(Scope)}. The
+ * root and the frozen scope act as a single scope: names defined in the
+ * frozen scope can't be defined again in the root, and setting one defines a
+ * copy in the root instead of modifying the frozen scope.
+ */
 public final class Scope {
 
-    private final Scope parent;
-    private final Map<String, Object> map = new HashMap<>();
+    private static final int MAX_SCAN = 8;
+    private static final Symbol[] NO_NAMES = new Symbol[0];
+    private static final Object[] NO_VALUES = new Object[0];
+    private static final Object NULL = new Object();
+
+    private Scope parent;
+    private boolean frozen = false;
+    private Symbol[] names = NO_NAMES;
+    private Object[] values = NO_VALUES;
+    private int size = 0;
+    private Map<Symbol, Integer> slots = null;
+    private Hamt bindings = null;
+    private ConcurrentHashMap<Symbol, Object> shared = null;
 
     public Scope(Scope parent) {
         this.parent = parent;
     }
 
+    private Scope(Scope parent, Hamt bindings) {
+        this.parent = parent;
+        this.bindings = bindings;
+    }
+
+    /**
+     * Returns an empty scope which can be used as the root scope of several
+     * interpreters on different threads, for example to evaluate independent
+     * top-level forms in parallel against the same global variables. Each
+     * thread must use its own {@link Interpreter}, whose {@link
+     * Interpreter#scope} is then that thread's current scope, and the scopes
+     * created by {@code do} and {@code for} are private to the thread.
+     *
+     * Variables are stored in a {@link ConcurrentHashMap}, so lookups don't
+     * lock, and defining or setting a variable is a single atomic operation.
+     * A variable is only rebound after its new value is stored, so inline
+     * caches on other threads never pair an old value with a new version.
+     * Forms which set the same variable concurrently still race with each
+     * other, as they would with any shared variable.
+     */
+    public static Scope concurrent(Scope parent) {
+        Scope scope = new Scope(parent);
+        scope.shared = new ConcurrentHashMap<>();
+        return scope;
+    }
+
+    /**
+     * Returns an empty scope which stores its variables in a persistent
+     * {@link Hamt} instead of slots. Defining, setting and looking up a
+     * variable each walk the trie once, at most seven levels deep, and {@link
+     * #fork()} doesn't need to convert it first, which suits large global
+     * scopes that are forked often. Lexical addresses don't apply to it, so
+     * small scopes are faster with slots.
+     */
+    public static Scope persistent(Scope parent) {
+        return new Scope(parent, Hamt.EMPTY);
+    }
+
     public Scope getParent() {
         return parent;
     }
 
     public void define(String name, Object value) {
-        if (map.containsKey(name)) {
+        define(Symbol.of(name), value);
+    }
+
+    public void define(Symbol name, Object value) {
+        if (parent != null && parent.frozen && parent.contains(name)) {
+            throw new EvalException("The identifier " + name + " is already defined in this scope.");
+        } else if (shared != null && !frozen) {
+            if (shared.putIfAbsent(name, mask(value)) != null) {
+                throw new EvalException("The identifier " + name + " is already defined in this scope.");
+            }
+            name.rebind();
+            return;
+        } else if (bindings != null && !frozen) {
+            Hamt defined = bindings.insert(name, value);
+            if (defined == null) {
+                throw new EvalException("The identifier " + name + " is already defined in this scope.");
+            }
+            name.rebind();
+            bindings = defined;
+            return;
+        } else if (contains(name)) {
             throw new EvalException("The identifier " + name + " is already defined in this scope.");
-        } else {
-            map.put(name, value);
         }
+        add(name, value);
+    }
+
+    /**
+     * Adds a new variable to this scope, which must not be frozen.
+     */
+    private void add(Symbol name, Object value) {
+        if (frozen) {
+            throw new UnsupportedOperationException("The scope is frozen.");
+        } else if (shared != null) {
+            shared.put(name, mask(value));
+            name.rebind();
+            return;
+        }
+        name.rebind();
+        if (bindings != null) {
+            bindings = bindings.insert(name, value);
+            return;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, Math.max(4, 2 * size));
+            values = Arrays.copyOf(values, names.length);
+        }
+        names[size] = name;
+        values[size] = value;
+        if (slots != null) {
+            slots.put(name, size);
+        } else if (size == MAX_SCAN) {
+            slots = new HashMap<>();
+            for (int i = 0; i <= size; i++) {
+                slots.put(names[i], i);
+            }
+        }
+        size++;
     }
 
     public void set(String name, Object value) throws EvalException {
-        if (map.containsKey(name)) {
-            map.put(name, value);
-        } else if (parent != null) {
-            parent.set(name, value);
-        } else {
-            throw new EvalException("The identifier " + name + " is not defined.");
+        set(Symbol.of(name), value);
+    }
+
+    public void set(Symbol name, Object value) throws EvalException {
+        Scope child = null;
+        for (Scope scope = this; scope != null; child = scope, scope = scope.parent) {
+            if (scope.shared != null && !scope.frozen) {
+                if (scope.shared.replace(name, mask(value)) == null) {
+                    continue;
+                }
+                name.rebind();
+                return;
+            }
+            int slot = scope.slot(name);
+            Hamt replaced = slot < 0 && scope.bindings != null ? scope.bindings.replace(name, value) : null;
+            if (slot < 0 && replaced == null) {
+                continue;
+            } else if (scope.frozen && child != null) {
+                child.add(name, value);
+            } else if (scope.frozen) {
+                throw new UnsupportedOperationException("The scope is frozen.");
+            } else if (slot >= 0) {
+                name.rebind();
+                scope.values[slot] = value;
+            } else {
+                name.rebind();
+                scope.bindings = replaced;
+            }
+            return;
         }
+        throw new EvalException("The identifier " + name + " is not defined.");
     }
 
     public Object lookup(String name) throws EvalException {
-        if (map.containsKey(name)) {
-            return map.get(name);
-        } else if (parent != null) {
-            return parent.lookup(name);
-        } else {
-            throw new EvalException("The identifier " + name + " is not defined.");
+        return lookup(Symbol.of(name));
+    }
+
+    /**
+     * Looks up the variable in this scope and then each parent in turn, with
+     * a loop so deeply nested scopes don't use the Java stack.
+     */
+    public Object lookup(Symbol name) throws EvalException {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            int slot = scope.slot(name);
+            if (slot >= 0) {
+                return scope.values[slot];
+            } else if (scope.bindings != null) {
+                Object value = scope.bindings.get(name);
+                if (value != Hamt.ABSENT) {
+                    return value;
+                }
+            } else if (scope.shared != null) {
+                Object value = scope.shared.get(name);
+                if (value != null) {
+                    return value != NULL ? value : null;
+                }
+            }
+        }
+        throw new EvalException("The identifier " + name + " is not defined.");
+    }
+
+    /**
+     * Returns the nearest scope defining the variable, starting from this
+     * one, or null if none does.
+     */
+    Scope find(Symbol name) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            if (scope.contains(name)) {
+                return scope;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks up the variable in the given slot of the scope {@code depth}
+     * parents up. The address is only a prediction, as variables may be
+     * defined conditionally, so if that slot doesn't hold the variable this
+     * falls back to looking it up by name.
+     */
+    public Object lookup(int depth, int slot, Symbol name) throws EvalException {
+        Scope scope = this;
+        for (int i = 0; i < depth && scope != null; i++) {
+            scope = scope.parent;
+        }
+        if (scope != null && slot < scope.size && scope.names[slot] == name) {
+            return scope.values[slot];
+        }
+        return lookup(name);
+    }
+
+    /**
+     * Freezes this scope, which can't be modified afterwards.
+     */
+    void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Makes the frozen scope the parent of this scope's root, unless it
+     * already is. The root must not define any of the frozen scope's names.
+     * A concurrent root is attached by whichever interpreter is created
+     * first, and locking it means every thread creating an interpreter on it
+     * sees its new parent.
+     */
+    void attach(Scope global) {
+        Scope scope = this;
+        while (scope.parent != null && scope.parent != global) {
+            scope = scope.parent;
+        }
+        Scope root = scope;
+        synchronized (root) {
+            if (root == global || root.parent == global) {
+                return;
+            } else if (root.frozen || !global.frozen) {
+                throw new IllegalStateException("Only a frozen scope can be attached to a mutable root.");
+            }
+            for (int i = 0; i < root.size; i++) {
+                if (global.contains(root.names[i])) {
+                    throw new EvalException("The identifier " + root.names[i] + " is already defined in this scope.");
+                }
+            }
+            if (root.bindings != null) {
+                root.bindings.forEach((name, value) -> {
+                    if (global.contains(name)) {
+                        throw new EvalException("The identifier " + name + " is already defined in this scope.");
+                    }
+                });
+            }
+            if (root.shared != null) {
+                for (Symbol name : root.shared.keySet()) {
+                    if (global.contains(name)) {
+                        throw new EvalException("The identifier " + name + " is already defined in this scope.");
+                    }
+                }
+            }
+            root.parent = global;
+        }
+    }
+
+    /**
+     * Returns an independent copy of this scope and its parents, up to a
+     * frozen scope which the copy shares. Changes made to either afterwards
+     * are not visible in the other.
+     *
+     * The copy stores its variables in a persistent {@link Hamt}, so copying
+     * it again only copies a reference to the map, and each copy's writes
+     * create new versions of the parts of the map they change. This scope is
+     * switched to the same map the first time it is copied, so copying takes
+     * time proportional to the number of variables once and then to the
+     * number of scopes. Lexical addresses from the {@link Resolver} don't
+     * apply to a persistent scope, so its variables are looked up by name.
+     */
+    public Scope fork() {
+        List<Scope> chain = new ArrayList<>();
+        for (Scope scope = this; scope != null && !scope.frozen; scope = scope.parent) {
+            chain.add(scope);
+        }
+        Scope copy = chain.isEmpty() ? this : chain.get(chain.size() - 1).parent;
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            Scope scope = chain.get(i);
+            if (scope.shared != null) {
+                Hamt bindings = Hamt.EMPTY;
+                for (Map.Entry<Symbol, Object> entry : scope.shared.entrySet()) {
+                    bindings = bindings.insert(entry.getKey(), entry.getValue() != NULL ? entry.getValue() : null);
+                }
+                copy = new Scope(copy, bindings);
+                continue;
+            } else if (scope.bindings == null) {
+                scope.bindings = Hamt.of(scope.names, scope.values, scope.size);
+                scope.names = NO_NAMES;
+                scope.values = NO_VALUES;
+                scope.size = 0;
+                scope.slots = null;
+            }
+            copy = new Scope(copy, scope.bindings);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns true if the variable is defined in this scope.
+     */
+    private boolean contains(Symbol name) {
+        return slot(name) >= 0 || bindings != null && bindings.get(name) != Hamt.ABSENT
+                || shared != null && shared.containsKey(name);
+    }
+
+    /**
+     * Returns the value to store in a {@link ConcurrentHashMap}, which can't
+     * hold null.
+     */
+    private static Object mask(Object value) {
+        return value != null ? value : NULL;
+    }
+
+    /**
+     * Returns the slot of the variable in this scope, or -1 if it is not
+     * defined here.
+     */
+    private int slot(Symbol name) {
+        if (slots != null) {
+            Integer slot = slots.get(name);
+            return slot != null ? slot : -1;
+        }
+        for (int i = 0; i < size; i++) {
+            if (names[i] == name) {
+                return i;
+            }
         }
+        return -1;
     }
 
 }
@@ -0,0 +1,253 @@
+package plc.interpreter;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runs many small scripts concurrently, each parsed and evaluated on its own
+ * thread in a fresh scope. {@link #submit(String)} returns a future of the
+ * script's {@link Result}, which holds the value of its last top-level form
+ * and everything it printed, or fails with the {@link ParseException} or
+ * {@link EvalException} the script threw.
+ *
+ * Scripts run on virtual threads when the JVM has them, so blocking scripts
+ * don't tie up a platform thread each, and otherwise on a fixed pool with a
+ * thread per processor. Virtual threads are created through reflection, as
+ * the build targets JVMs without them.
+ *
+ * Interpreters are kept in a pool of up to {@code poolSize} idle
+ * interpreters and reset between scripts, along with their output buffers
+ * and argument stacks, so these aren't created again on each new virtual
+ * thread. A script still allocates its own scope, AST, result and output
+ * string, and a thread calling a function defined by a script has its own
+ * record of the running interpreter. Interpreters are never shared by running
+ * scripts, and the standard library is shared by all of them, see {@link
+ * Scope#attach(Scope)}.
+ *
+ * The service records the latency of every script from submission to
+ * completion in a histogram of buckets an eighth of a power of two wide, so
+ * {@link #getLatencyNanos(double)} reports percentiles to within 12.5%
+ * without keeping every sample.
+ */
+public final class ScriptService implements AutoCloseable {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int MAX_BUFFER = 1 << 16;
+
+    private final Interpreter.Engine engine;
+    private final ExecutorService executor;
+    private final BlockingQueue<Worker> pool;
+    private final AtomicLongArray latencies = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public ScriptService(Interpreter.Engine engine, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("The pool size must be positive, received " + poolSize + ".");
+        }
+        this.engine = engine;
+        this.executor = createExecutor();
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    /**
+     * Returns an executor starting a virtual thread per task if the JVM
+     * supports them, and otherwise a fixed pool of daemon threads.
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+                Thread thread = new Thread(task, "whisp-script");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Parses and evaluates the script on another thread, returning a future of
+     * its result. The counters and latencies include the script by the time
+     * the future completes.
+     */
+    public CompletableFuture<Result> submit(String source) {
+        long start = System.nanoTime();
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            Worker worker = acquire();
+            Result result = null;
+            Throwable error = null;
+            try {
+                result = worker.run(source);
+            } catch (RuntimeException | Error e) {
+                failed.incrementAndGet();
+                error = e;
+            } finally {
+                release(worker);
+            }
+            record(System.nanoTime() - start);
+            if (error == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(error);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Returns the number of scripts which have finished, including those
+     * which failed.
+     */
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the latency which the given fraction of finished scripts took
+     * at most, such as 0.99 for the 99th percentile, or 0 if none have
+     * finished.
+     */
+    public long getLatencyNanos(double percentile) {
+        if (percentile < 0 || percentile > 1) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 1, received " + percentile + ".");
+        }
+        long count = 0;
+        long[] buckets = new long[latencies.length()];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = latencies.get(i);
+            count += buckets[i];
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        for (int i = 0; i < buckets.length; i++) {
+            rank -= buckets[i];
+            if (rank <= 0) {
+                return upperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stops accepting scripts. Scripts which were already submitted still
+     * run.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private Worker acquire() {
+        Worker worker = pool.poll();
+        return worker != null ? worker : new Worker(engine);
+    }
+
+    /**
+     * Resets the worker and returns it to the pool, unless the pool is full.
+     */
+    private void release(Worker worker) {
+        worker.reset();
+        pool.offer(worker);
+    }
+
+    private void record(long nanos) {
+        latencies.incrementAndGet(bucket(Math.max(1, nanos)));
+        completed.incrementAndGet();
+    }
+
+    /**
+     * Returns the bucket of the latency, which is the position of its highest
+     * bit and the next three bits below it.
+     */
+    static int bucket(long nanos) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        if (magnitude < 3) {
+            return (int) nanos;
+        }
+        return (magnitude - 2) * SUB_BUCKETS + (int) ((nanos >>> (magnitude - 3)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Returns the largest latency in the bucket.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS + 2;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (magnitude - 3);
+        return lower + (1L << (magnitude - 3)) - 1;
+    }
+
+    /**
+     * The value and output of a script.
+     */
+    public static final class Result {
+
+        private final Object value;
+        private final String output;
+
+        private Result(Object value, String output) {
+            this.value = value;
+            this.output = output;
+        }
+
+        /**
+         * Returns the value of the last top-level form, or {@link
+         * Interpreter#VOID} if there were none.
+         */
+        public Object getValue() {
+            return value;
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+    }
+
+    /**
+     * A pooled interpreter and the buffer its output is written to.
+     */
+    private static final class Worker {
+
+        private final StringWriter buffer = new StringWriter();
+        private final Interpreter interpreter;
+
+        private Worker(Interpreter.Engine engine) {
+            interpreter = new Interpreter(new PrintWriter(buffer), new Scope(null), engine);
+        }
+
+        private Result run(String source) {
+            Object value = Interpreter.VOID;
+            for (Ast ast : ((Ast.Term) Parser.parse(source)).getArgs()) {
+                value = interpreter.eval(ast);
+            }
+            interpreter.out.flush();
+            return new Result(value, buffer.toString());
+        }
+
+        private void reset() {
+            interpreter.out.flush();
+            buffer.getBuffer().setLength(0);
+            if (buffer.getBuffer().capacity() > MAX_BUFFER) {
+                buffer.getBuffer().trimToSize();
+            }
+            interpreter.reset(new Scope(null));
+        }
+
+    }
+
+}
@@ -0,0 +1,181 @@
+package plc.interpreter;
+
+import java.lang.invoke.SwitchPoint;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * An interned identifier name. There is exactly one symbol for each name, so
+ * symbols are compared by identity and hash on a precomputed id instead of
+ * hashing and comparing the characters of the name.
+ *
+ * Symbols live in a single global table which is shared by the parser (which
+ * interns identifiers straight from the source as it reads their tokens),
+ * {@link Ast} and {@link Scope}. The table only ever grows.
+ *
+ * Code compiled by the {@link Jit} assumes the names it calls keep referring
+ * to the same functions. Those assumptions are recorded on the symbol as a
+ * {@link SwitchPoint}, which any scope defining or setting the name
+ * invalidates. Inline caches use the symbol's {@link #version()} instead.
+ */
+public final class Symbol {
+
+    private static final AtomicIntegerFieldUpdater<Symbol> VERSION = AtomicIntegerFieldUpdater.newUpdater(Symbol.class, "version");
+    private static volatile Symbol[] table = new Symbol[1024];
+    private static int size = 0;
+
+    private final String name;
+    private final int id;
+    private final int hash;
+    private volatile SwitchPoint binding;
+    private volatile int version = 0;
+
+    private Symbol(String name, int id, int hash) {
+        this.name = name;
+        this.id = id;
+        this.hash = hash;
+    }
+
+    /**
+     * Returns the symbol for the given name.
+     */
+    public static Symbol of(String name) {
+        return of(name, 0, name.length());
+    }
+
+    /**
+     * Returns the symbol for the name {@code [start, start + length)} of the
+     * source. If the symbol already exists no string is created.
+     */
+    static Symbol of(CharSequence source, int start, int length) {
+        int hash = hash(source, start, length);
+        Symbol[] table = Symbol.table;
+        for (int i = hash & (table.length - 1); table[i] != null; i = (i + 1) & (table.length - 1)) {
+            if (table[i].hash == hash && table[i].matches(source, start, length)) {
+                return table[i];
+            }
+        }
+        return intern(source, start, length, hash);
+    }
+
+    /**
+     * Adds the symbol to the table if it was not added by another thread since
+     * the unsynchronized lookup. Readers never see a partially resized table,
+     * as the new table is only published once it has been filled.
+     */
+    private static synchronized Symbol intern(CharSequence source, int start, int length, int hash) {
+        Symbol[] table = Symbol.table;
+        int i = hash & (table.length - 1);
+        for (; table[i] != null; i = (i + 1) & (table.length - 1)) {
+            if (table[i].hash == hash && table[i].matches(source, start, length)) {
+                return table[i];
+            }
+        }
+        Symbol symbol = new Symbol(source.subSequence(start, start + length).toString(), size++, hash);
+        if (2 * size > table.length) {
+            Symbol[] resized = new Symbol[2 * table.length];
+            for (Symbol existing : table) {
+                if (existing != null) {
+                    int j = existing.hash & (resized.length - 1);
+                    while (resized[j] != null) {
+                        j = (j + 1) & (resized.length - 1);
+                    }
+                    resized[j] = existing;
+                }
+            }
+            i = hash & (resized.length - 1);
+            while (resized[i] != null) {
+                i = (i + 1) & (resized.length - 1);
+            }
+            resized[i] = symbol;
+            Symbol.table = resized;
+        } else {
+            table[i] = symbol;
+        }
+        return symbol;
+    }
+
+    /**
+     * Hashes the characters the same way as {@link String#hashCode()}.
+     */
+    private static int hash(CharSequence source, int start, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + source.charAt(start + i);
+        }
+        return hash;
+    }
+
+    private boolean matches(CharSequence source, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a switch point which is invalidated the next time any scope
+     * defines or sets this name.
+     */
+    synchronized SwitchPoint binding() {
+        if (binding == null) {
+            binding = new SwitchPoint();
+        }
+        return binding;
+    }
+
+    /**
+     * Returns the number of times this name has been defined or set in any
+     * scope, which changes whenever looking it up could find a different value.
+     */
+    int version() {
+        return version;
+    }
+
+    /**
+     * Called by {@link Scope} whenever this name is defined or set. This only
+     * increments the version unless compiled code depends on the name. The
+     * increment is atomic, as a lost update from a concurrent rebind could
+     * return the version to one an inline cache already holds.
+     */
+    void rebind() {
+        VERSION.incrementAndGet(this);
+        if (binding != null) {
+            invalidate();
+        }
+    }
+
+    private synchronized void invalidate() {
+        if (binding != null) {
+            SwitchPoint.invalidateAll(new SwitchPoint[] {binding});
+            binding = null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the id of this symbol, which is unique and assigned in order
+     * from zero.
+     */
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -10,13 +10,29 @@ public final class Token {
     }
 
     private final Type type;
-    private final String literal;
+    private final CharSequence source;
     private final int index;
+    private final int length;
+    private String literal;
 
     public Token(Type type, String literal, int index) {
         this.type = type;
+        this.source = null;
+        this.index = index;
+        this.length = literal.length();
         this.literal = literal;
+    }
+
+    /**
+     * Creates a token whose literal is the characters {@code [index, index +
+     * length)} of the source, which is only converted to a string the first
+     * time {@link #getLiteral()} is called.
+     */
+    public Token(Type type, CharSequence source, int index, int length) {
+        this.type = type;
+        this.source = source;
         this.index = index;
+        this.length = length;
     }
 
     public Type getType() {
@@ -24,6 +40,9 @@ public final class Token {
     }
 
     public String getLiteral() {
+        if (literal == null) {
+            literal = source.subSequence(index, index + length).toString();
+        }
         return literal;
     }
 
@@ -31,16 +50,20 @@ public final class Token {
         return index;
     }
 
+    public int getLength() {
+        return length;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
+                && getLiteral().equals(((Token) obj).getLiteral())
                 && index == ((Token) obj).index;
     }
 
     @Override
     public String toString() {
-        return type + "=`" + literal + "`@" + index;
+        return type + "=`" + getLiteral() + "`@" + index;
     }
 
 }
@@ -0,0 +1,114 @@
+package plc.interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A packed list of tokens lexed from a single source, stored as parallel
+ * arrays of types, start offsets and lengths instead of one {@link Token}
+ * object per token. This is 9 bytes per token, and the accessors below read
+ * the source directly so the parser doesn't need to create tokens or literals
+ * to check what the next token is.
+ */
+final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final CharSequence source;
+    private byte[] types = new byte[16];
+    private int[] starts = new int[16];
+    private int[] lengths = new int[16];
+    private int size = 0;
+
+    TokenBuffer(CharSequence source) {
+        this.source = source;
+    }
+
+    /**
+     * Appends a token covering {@code [start, start + length)} of the source.
+     */
+    void add(Token.Type type, int start, int length) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Token.Type getType(int index) {
+        return TYPES[types[index]];
+    }
+
+    int getStart(int index) {
+        return starts[index];
+    }
+
+    int getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Returns the character at the given offset in the literal of the token.
+     */
+    char charAt(int index, int offset) {
+        return source.charAt(starts[index] + offset);
+    }
+
+    /**
+     * Returns true if the literal of the token is equal to the given string.
+     */
+    boolean matches(int index, String literal) {
+        if (lengths[index] != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < lengths[index]; i++) {
+            if (source.charAt(starts[index] + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the literal of the token.
+     */
+    String getLiteral(int index) {
+        return source.subSequence(starts[index], starts[index] + lengths[index]).toString();
+    }
+
+    /**
+     * Returns the interned {@link Symbol} for the literal of the token, which
+     * only creates a string the first time the name is seen.
+     */
+    Symbol getSymbol(int index) {
+        return Symbol.of(source, starts[index], lengths[index]);
+    }
+
+    /**
+     * Creates a {@link Token} for the token at the given index.
+     */
+    Token get(int index) {
+        return new Token(getType(index), source, starts[index], lengths[index]);
+    }
+
+    /**
+     * Creates {@link Token}s for every token in the buffer.
+     */
+    List<Token> toList() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(get(i));
+        }
+        return tokens;
+    }
+
+}
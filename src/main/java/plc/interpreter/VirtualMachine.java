@@ -0,0 +1,182 @@
+package plc.interpreter;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Executes {@link Bytecode} with a single dispatch loop over the instructions.
+ * The semantics of each instruction match the standard library function it
+ * was compiled from; see {@link Bytecode} for the instruction set.
+ */
+final class VirtualMachine {
+
+    private VirtualMachine() {}
+
+    static Object run(Bytecode bytecode, Scope scope) {
+        int[] code = bytecode.code;
+        Object[] constants = bytecode.constants;
+        Object[] stack = new Object[bytecode.maxStack];
+        int top = 0;
+        int pc = 0;
+        while (pc < code.length) {
+            switch (code[pc]) {
+                case Bytecode.CONSTANT:
+                    stack[top++] = constants[code[pc + 1]];
+                    pc += 2;
+                    break;
+                case Bytecode.LOAD: {
+                    Ast.Identifier identifier = (Ast.Identifier) constants[code[pc + 1]];
+                    stack[top++] = identifier.depth == Ast.UNRESOLVED
+                            ? scope.lookup(identifier.getSymbol())
+                            : scope.lookup(identifier.depth, identifier.slot, identifier.getSymbol());
+                    pc += 2;
+                    break;
+                }
+                case Bytecode.POP:
+                    stack[--top] = null;
+                    pc += 1;
+                    break;
+                case Bytecode.NUMBER:
+                    Interpreter.requireType(BigDecimal.class, stack[top - 1]);
+                    pc += 1;
+                    break;
+                case Bytecode.ADD: {
+                    int count = code[pc + 1];
+                    BigDecimal result = BigDecimal.ZERO;
+                    for (int i = top - count; i < top; i++) {
+                        result = Numbers.add(result, (BigDecimal) stack[i]);
+                    }
+                    top = push(stack, top - count, top, result);
+                    pc += 2;
+                    break;
+                }
+                case Bytecode.SUBTRACT: {
+                    int count = code[pc + 1];
+                    BigDecimal result = (BigDecimal) stack[top - count];
+                    if (count == 1) {
+                        result = Numbers.negate(result);
+                    }
+                    for (int i = top - count + 1; i < top; i++) {
+                        result = Numbers.subtract(result, (BigDecimal) stack[i]);
+                    }
+                    top = push(stack, top - count, top, result);
+                    pc += 2;
+                    break;
+                }
+                case Bytecode.MULTIPLY: {
+                    int count = code[pc + 1];
+                    BigDecimal result = BigDecimal.ONE;
+                    for (int i = top - count; i < top; i++) {
+                        result = Numbers.multiply(result, Interpreter.requireType(BigDecimal.class, stack[i]));
+                    }
+                    top = push(stack, top - count, top, result);
+                    pc += 2;
+                    break;
+                }
+                case Bytecode.DIVIDE: {
+                    int count = code[pc + 1];
+                    top = push(stack, top - count, top, Interpreter.divide(stack, top - count, top));
+                    pc += 2;
+                    break;
+                }
+                case Bytecode.COMPARE: {
+                    int operator = code[pc + 1];
+                    int count = code[pc + 2];
+                    top = push(stack, top - count, top, compare(stack, top - count, top, operator));
+                    pc += 3;
+                    break;
+                }
+                case Bytecode.NOT:
+                    stack[top - 1] = !Interpreter.requireType(Boolean.class, stack[top - 1]);
+                    pc += 1;
+                    break;
+                case Bytecode.JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case Bytecode.JUMP_IF: {
+                    boolean value = Interpreter.requireType(Boolean.class, stack[--top]);
+                    stack[top] = null;
+                    pc = value == (code[pc + 2] != 0) ? code[pc + 1] : pc + 3;
+                    break;
+                }
+                case Bytecode.ENTER:
+                    scope = new Scope(scope);
+                    pc += 1;
+                    break;
+                case Bytecode.EXIT:
+                    scope = scope.getParent();
+                    pc += 1;
+                    break;
+                case Bytecode.DEFINE:
+                    scope.define((Symbol) constants[code[pc + 1]], stack[--top]);
+                    stack[top] = null;
+                    pc += 2;
+                    break;
+                case Bytecode.SET:
+                    scope.set((Symbol) constants[code[pc + 1]], stack[--top]);
+                    stack[top] = null;
+                    pc += 2;
+                    break;
+                case Bytecode.GUARD: {
+                    Bytecode.Guard guard = (Bytecode.Guard) constants[code[pc + 1]];
+                    pc = Interpreter.lookupFunction(guard.term, scope) == guard.builtin ? pc + 3 : code[pc + 2];
+                    break;
+                }
+                case Bytecode.CALL: {
+                    Ast.Term term = (Ast.Term) constants[code[pc + 1]];
+                    Function<List<Ast>, Object> function = Interpreter.lookupFunction(term, scope);
+                    bytecode.interpreter.scope = scope;
+                    stack[top++] = bytecode.interpreter.call(function, term.getArgs());
+                    pc += 2;
+                    break;
+                }
+                default:
+                    throw new AssertionError(code[pc]);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Replaces the values in {@code [start, top)} with the result.
+     */
+    private static int push(Object[] stack, int start, int top, Object result) {
+        for (int i = start + 1; i < top; i++) {
+            stack[i] = null;
+        }
+        stack[start] = result;
+        return start + 1;
+    }
+
+    /**
+     * Compares the values in {@code [start, end)} pairwise with the operator,
+     * which must be one of the {@link Bytecode} comparison operators.
+     */
+    @SuppressWarnings("unchecked")
+    static boolean compare(Object[] stack, int start, int end, int operator) {
+        boolean numbers = true, strings = true;
+        for (int i = start; i < end; i++) {
+            numbers &= stack[i] instanceof BigDecimal;
+            strings &= stack[i] instanceof String;
+        }
+        if (!numbers && !strings) {
+            throw new EvalException("Arguments not comparable.");
+        }
+        for (int i = start; i < end - 1; i++) {
+            int comparison = ((Comparable<Object>) stack[i]).compareTo(stack[i + 1]);
+            boolean result;
+            switch (operator) {
+                case Bytecode.LESS: result = comparison < 0; break;
+                case Bytecode.LESS_EQUAL: result = comparison <= 0; break;
+                case Bytecode.GREATER: result = comparison > 0; break;
+                default: result = comparison >= 0; break;
+            }
+            if (!result) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
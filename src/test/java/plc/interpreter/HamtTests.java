@@ -0,0 +1,59 @@
+package plc.interpreter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class HamtTests {
+
+    @Test
+    void testEmpty() {
+        Assertions.assertSame(Hamt.ABSENT, Hamt.EMPTY.get(Symbol.of("x")));
+        Assertions.assertEquals(0, Hamt.EMPTY.size());
+    }
+
+    @Test
+    void testPersistent() {
+        Hamt first = Hamt.EMPTY.insert(Symbol.of("x"), 1);
+        Hamt second = first.replace(Symbol.of("x"), 2).insert(Symbol.of("y"), null);
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(1, first.get(Symbol.of("x"))),
+                () -> Assertions.assertSame(Hamt.ABSENT, first.get(Symbol.of("y"))),
+                () -> Assertions.assertEquals(1, first.size()),
+                () -> Assertions.assertEquals(2, second.get(Symbol.of("x"))),
+                () -> Assertions.assertNull(second.get(Symbol.of("y"))),
+                () -> Assertions.assertEquals(2, second.size())
+        );
+    }
+
+    @Test
+    void testSingleProbe() {
+        Hamt map = Hamt.EMPTY.insert(Symbol.of("x"), 1);
+        Assertions.assertAll(
+                () -> Assertions.assertNull(map.insert(Symbol.of("x"), 2)),
+                () -> Assertions.assertNull(map.replace(Symbol.of("y"), 2)),
+                () -> Assertions.assertEquals(1, map.get(Symbol.of("x")))
+        );
+    }
+
+    @Test
+    void testGrowth() {
+        Symbol[] symbols = new Symbol[10000];
+        Hamt map = Hamt.EMPTY;
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = Symbol.of("hamt-" + i);
+            map = map.insert(symbols[i], i);
+        }
+        Assertions.assertEquals(symbols.length, map.size());
+        for (int i = 0; i < symbols.length; i++) {
+            Assertions.assertEquals(i, map.get(symbols[i]));
+        }
+        Map<Symbol, Object> entries = new HashMap<>();
+        map.forEach(entries::put);
+        Assertions.assertEquals(symbols.length, entries.size());
+        Assertions.assertEquals(symbols.length - 1, entries.get(symbols[symbols.length - 1]));
+    }
+
+}
@@ -194,14 +194,20 @@ final class InterpreterBaselineTests {
         )), BigDecimal.valueOf(45), Collections.emptyMap());
     }
 
+    /**
+     * Evaluates the AST with each {@link Interpreter.Engine}, which must all
+     * produce the expected result.
+     */
     private static void test(Ast ast, Object expected, Map<String, Object> map) {
-        Scope scope = new Scope(null);
-        map.forEach(scope::define);
-        Interpreter interpreter = new Interpreter(new PrintWriter(System.out, true), scope);
-        if (expected != null) {
-            Assertions.assertEquals(expected, interpreter.eval(ast));
-        } else {
-            Assertions.assertThrows(EvalException.class, () -> interpreter.eval(ast));
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            Scope scope = new Scope(null);
+            map.forEach(scope::define);
+            Interpreter interpreter = new Interpreter(new PrintWriter(System.out, true), scope, engine);
+            if (expected != null) {
+                Assertions.assertEquals(expected, interpreter.eval(ast), engine.toString());
+            } else {
+                Assertions.assertThrows(EvalException.class, () -> interpreter.eval(ast));
+            }
         }
     }
 
@@ -7,9 +7,12 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
@@ -370,14 +373,156 @@ final class InterpreterTests {
         );
     }
 
-    private static void test(Ast ast, Object expected, Map<String, Object> map) {
+    @Test
+    void testRedefinedFunction() {
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            Scope scope = new Scope(null);
+            Interpreter interpreter = new Interpreter(new PrintWriter(System.out), scope, engine);
+            Ast ast = new Ast.Term("+", Arrays.asList(
+                    new Ast.NumberLiteral(BigDecimal.valueOf(5)),
+                    new Ast.NumberLiteral(BigDecimal.valueOf(3))
+            ));
+            Assertions.assertEquals(BigDecimal.valueOf(8), interpreter.eval(ast), engine.toString());
+            scope.set("+", scope.lookup("-"));
+            Assertions.assertEquals(BigDecimal.valueOf(2), interpreter.eval(ast), engine.toString());
+        }
+    }
+
+    @Test
+    void testSharedBuiltins() {
+        Scope first = new Scope(null);
+        Scope second = new Scope(null);
+        Interpreter interpreter = new Interpreter(new PrintWriter(System.out), first);
+        new Interpreter(new PrintWriter(System.out), second);
+        Assertions.assertSame(first.lookup("print"), second.lookup("print"));
+        interpreter.eval(new Ast.Term("set!", Arrays.asList(new Ast.Identifier("+"), new Ast.Identifier("-"))));
+        Assertions.assertSame(first.lookup("-"), first.lookup("+"));
+        Assertions.assertNotSame(second.lookup("-"), second.lookup("+"));
+        Assertions.assertThrows(EvalException.class, () -> first.define("print", Interpreter.VOID));
+    }
+
+    @Test
+    void testDivideByZero() {
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            StringWriter writer = new StringWriter();
+            Interpreter interpreter = new Interpreter(new PrintWriter(writer), new Scope(null), engine);
+            run(interpreter, "(define y 0)");
+            Assertions.assertThrows(EvalException.class, () -> run(interpreter, "(/ 1 0 (do (print \"x\") (set! y 1) 2))"), engine.toString());
+            Assertions.assertEquals(BigDecimal.ONE, interpreter.scope.lookup("y"), engine.toString());
+            Assertions.assertEquals(String.format("x%n"), writer.toString(), engine.toString());
+        }
+    }
+
+    @Test
+    void testCallCacheInLoopBody() {
+        Ast.Term loop = (Ast.Term) ((Ast.Term) Parser.parse("(while (< i 3) (do (set! i (+ i 1))))")).getArgs().get(0);
+        Ast.Term set = (Ast.Term) ((Ast.Term) loop.getArgs().get(1)).getArgs().get(0);
+        for (Interpreter.Engine engine : Arrays.asList(Interpreter.Engine.TREE, Interpreter.Engine.TRAMPOLINE)) {
+            Scope scope = new Scope(null);
+            scope.define("i", BigDecimal.ZERO);
+            Interpreter interpreter = new Interpreter(new PrintWriter(System.out), scope, engine);
+            interpreter.eval(loop);
+            Interpreter.CallCache cache = set.cache;
+            scope.set("i", BigDecimal.ZERO);
+            interpreter.eval(loop);
+            Assertions.assertSame(cache, set.cache, engine.toString());
+            Assertions.assertEquals(BigDecimal.valueOf(3), scope.lookup("i"));
+        }
+    }
+
+    @Test
+    void testSnapshot() {
+        Interpreter interpreter = new Interpreter(new PrintWriter(System.out), new Scope(null));
+        run(interpreter, "(define x 1) (define y 2)");
+        Interpreter.Snapshot snapshot = interpreter.snapshot();
+        Interpreter first = snapshot.fork(new PrintWriter(System.out));
+        Interpreter second = snapshot.fork(new PrintWriter(System.out));
+        run(first, "(set! x 10) (define z 3)");
+        run(interpreter, "(set! y 20)");
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(BigDecimal.valueOf(10), first.scope.lookup("x")),
+                () -> Assertions.assertEquals(BigDecimal.valueOf(2), first.scope.lookup("y")),
+                () -> Assertions.assertEquals(BigDecimal.valueOf(3), first.scope.lookup("z")),
+                () -> Assertions.assertEquals(BigDecimal.ONE, second.scope.lookup("x")),
+                () -> Assertions.assertThrows(EvalException.class, () -> second.scope.lookup("z")),
+                () -> Assertions.assertEquals(BigDecimal.ONE, interpreter.scope.lookup("x")),
+                () -> Assertions.assertEquals(BigDecimal.valueOf(20), interpreter.scope.lookup("y")),
+                () -> Assertions.assertEquals(BigDecimal.valueOf(2), snapshot.fork(new PrintWriter(System.out)).scope.lookup("y"))
+        );
+    }
+
+    @Test
+    void testConcurrentScope() throws InterruptedException {
+        Scope globals = Scope.concurrent(null);
+        new Interpreter(new PrintWriter(System.out), globals).scope.define("step", BigDecimal.ONE);
+        Thread[] threads = new Thread[2 * Interpreter.Engine.values().length];
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < threads.length; i++) {
+            String name = "counter" + i;
+            Interpreter.Engine engine = Interpreter.Engine.values()[i % Interpreter.Engine.values().length];
+            threads[i] = new Thread(() -> {
+                Interpreter interpreter = new Interpreter(new PrintWriter(System.out), globals, engine);
+                run(interpreter, "(define " + name + " 0)");
+                for (int j = 0; j < 1000; j++) {
+                    run(interpreter, "(do (define next (+ " + name + " step)) (set! " + name + " next))");
+                }
+            });
+            threads[i].setUncaughtExceptionHandler((thread, e) -> errors.add(e));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(Collections.emptyList(), errors);
+        for (int i = 0; i < threads.length; i++) {
+            Assertions.assertEquals(BigDecimal.valueOf(1000), globals.lookup("counter" + i));
+        }
+    }
+
+    private static void run(Interpreter interpreter, String input) {
+        for (Ast ast : ((Ast.Term) Parser.parse(input)).getArgs()) {
+            interpreter.eval(ast);
+        }
+    }
+
+    @Test
+    void testDeepTailNesting() {
+        Ast ast = new Ast.NumberLiteral(BigDecimal.ONE);
+        for (int i = 0; i < 100_000; i++) {
+            ast = new Ast.Term("do", Arrays.asList(new Ast.NumberLiteral(BigDecimal.ZERO), ast));
+        }
         Scope scope = new Scope(null);
-        map.forEach(scope::define);
-        Interpreter interpreter = new Interpreter(new PrintWriter(System.out), scope);
-        if (expected != null) {
-            Assertions.assertEquals(expected, interpreter.eval(ast));
-        } else {
-            Assertions.assertThrows(EvalException.class, () -> interpreter.eval(ast));
+        Interpreter interpreter = new Interpreter(new PrintWriter(System.out), scope, Interpreter.Engine.TRAMPOLINE);
+        Assertions.assertEquals(BigDecimal.ONE, interpreter.eval(ast));
+        Assertions.assertSame(scope, interpreter.scope);
+    }
+
+    @Test
+    void testShadowedTailDo() {
+        test(new Ast.Term("do", Arrays.asList(
+                new Ast.Term("define", Arrays.asList(new Ast.Identifier("do"), new Ast.Identifier("+"))),
+                new Ast.Term("do", Arrays.asList(
+                        new Ast.NumberLiteral(BigDecimal.ONE),
+                        new Ast.NumberLiteral(BigDecimal.valueOf(2))
+                ))
+        )), BigDecimal.valueOf(3), Collections.emptyMap());
+    }
+
+    /**
+     * Evaluates the AST with each {@link Interpreter.Engine}, which must all
+     * produce the expected result.
+     */
+    private static void test(Ast ast, Object expected, Map<String, Object> map) {
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            for (Scope scope : Arrays.asList(new Scope(null), Scope.persistent(null), Scope.concurrent(null))) {
+                map.forEach(scope::define);
+                Interpreter interpreter = new Interpreter(new PrintWriter(System.out), scope, engine);
+                if (expected != null) {
+                    Assertions.assertEquals(expected, interpreter.eval(ast), engine.toString());
+                } else {
+                    Assertions.assertThrows(EvalException.class, () -> interpreter.eval(ast));
+                }
+            }
         }
     }
 
@@ -0,0 +1,90 @@
+package plc.interpreter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.stream.Stream;
+
+final class JitTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testHot(String test, String input, Object expected) {
+        Ast ast = parse(input);
+        Interpreter interpreter = new Interpreter(new PrintWriter(new StringWriter()), new Scope(null), Interpreter.Engine.JIT);
+        for (int i = 0; i < Jit.THRESHOLD; i++) {
+            Assertions.assertEquals(expected, interpreter.eval(ast));
+        }
+        Assertions.assertTrue(isCompiled(ast));
+        Assertions.assertEquals(expected, interpreter.eval(ast));
+    }
+
+    private static Stream<Arguments> testHot() {
+        return Stream.of(
+                Arguments.of("Arithmetic", "(+ 1 (- 5 2) (* 2 3) (/ 9 2) (- 1))", BigDecimal.valueOf(13)),
+                Arguments.of("Comparison", "(and (< 1 2 3) (>= 3 3) (not (> 1 2)) (or false (<= 1 1)))", true),
+                Arguments.of("Short Circuit", "(or true (undefined))", true),
+                Arguments.of("Loop", "(do (define i 0) (while (< i 10) (set! i (+ i 1))) i)", BigDecimal.TEN),
+                Arguments.of("Shadowed", "(do (define + -) (+ 5 3))", BigDecimal.valueOf(2)),
+                Arguments.of("Call", "(do (print) (+ 1 1))", BigDecimal.valueOf(2))
+        );
+    }
+
+    @Test
+    void testRedefined() {
+        Ast ast = parse("(+ 5 3)");
+        Scope scope = new Scope(null);
+        Interpreter interpreter = new Interpreter(new PrintWriter(System.out), scope, Interpreter.Engine.JIT);
+        for (int i = 0; i < Jit.THRESHOLD; i++) {
+            interpreter.eval(ast);
+        }
+        Assertions.assertTrue(isCompiled(ast));
+        scope.set("+", scope.lookup("-"));
+        Assertions.assertEquals(BigDecimal.valueOf(2), interpreter.eval(ast));
+        Assertions.assertFalse(isCompiled(ast));
+    }
+
+    @Test
+    void testError() {
+        Ast ast = parse("(+ 1 x)");
+        Scope scope = new Scope(null);
+        scope.define("x", BigDecimal.ONE);
+        Interpreter interpreter = new Interpreter(new PrintWriter(System.out), scope, Interpreter.Engine.JIT);
+        for (int i = 0; i < Jit.THRESHOLD; i++) {
+            interpreter.eval(ast);
+        }
+        scope.set("x", "one");
+        Assertions.assertThrows(EvalException.class, () -> interpreter.eval(ast));
+    }
+
+    @Test
+    void testDivideByZero() {
+        Ast ast = parse("(/ 1 d (do (set! y (+ y 1)) 1))");
+        Scope scope = new Scope(null);
+        scope.define("d", BigDecimal.ONE);
+        scope.define("y", BigDecimal.ZERO);
+        Interpreter interpreter = new Interpreter(new PrintWriter(System.out), scope, Interpreter.Engine.JIT);
+        for (int i = 0; i < Jit.THRESHOLD; i++) {
+            interpreter.eval(ast);
+        }
+        Assertions.assertTrue(isCompiled(ast));
+        scope.set("d", BigDecimal.ZERO);
+        Assertions.assertThrows(EvalException.class, () -> interpreter.eval(ast));
+        Assertions.assertEquals(BigDecimal.valueOf(Jit.THRESHOLD + 1), scope.lookup("y"));
+    }
+
+    private static boolean isCompiled(Ast ast) {
+        return ((Jit.Profile) ast.compiled).isCompiled();
+    }
+
+    private static Ast parse(String input) {
+        return ((Ast.Term) Parser.parse(input)).getArgs().get(0);
+    }
+
+}
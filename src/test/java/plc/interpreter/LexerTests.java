@@ -6,7 +6,15 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -128,6 +136,110 @@ final class LexerTests {
         Assertions.assertEquals(expected, Lexer.lex(input));
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testStream(String test, String input) {
+        List<Token> expected = Lexer.lex(input);
+        List<Token> actual = new ArrayList<>();
+        Lexer.stream(new StringReader(input)).forEachRemaining(actual::add);
+        Assertions.assertEquals(expected, actual);
+    }
+
+    private static Stream<Arguments> testStream() {
+        String form = "(print \"Hello, World!\" (+ 1 -2.0) [x 10])\n";
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            large.append(form);
+        }
+        StringBuilder identifier = new StringBuilder("(print ");
+        for (int i = 0; i < 20000; i++) {
+            identifier.append('x');
+        }
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Empty String", "\"\""),
+                Arguments.of("Example", form),
+                Arguments.of("Larger Than Window", large.toString()),
+                Arguments.of("Token Larger Than Window", identifier.append(")").toString())
+        );
+    }
+
+    @Test
+    void testPacked() {
+        String input = "(let [x 10] (assert-equals? x \"ten\" -2.0))";
+        TokenBuffer tokens = Lexer.lexPacked(input);
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(Lexer.lex(input), tokens.toList()),
+                () -> Assertions.assertTrue(tokens.matches(1, "let")),
+                () -> Assertions.assertEquals("\"ten\"", tokens.getLiteral(9))
+        );
+    }
+
+    @Test
+    void testStreamError() {
+        Iterator<Token> tokens = Lexer.stream(CharBuffer.wrap("(print \"unterminated"));
+        Assertions.assertEquals(new Token(Token.Type.OPERATOR, "(", 0), tokens.next());
+        Assertions.assertEquals(new Token(Token.Type.IDENTIFIER, "print", 1), tokens.next());
+        Assertions.assertThrows(ParseException.class, tokens::next);
+    }
+
+    @Test
+    void testMapped() throws IOException {
+        String input = "(print \"Hello, World!\" (+ 1 -2.0) [x 10])";
+        Path path = Files.createTempFile("lexer", ".whisp");
+        try {
+            Files.write(path, input.getBytes(StandardCharsets.US_ASCII));
+            Assertions.assertEquals(Lexer.lex(input), Lexer.lex(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Checks the precomputed lookup table of each character class against the
+     * regex it was built from for every {@code char} value, which is what
+     * guarantees the table-driven lexer produces the same tokens as matching
+     * each character with a regex.
+     */
+    @ParameterizedTest
+    @MethodSource
+    void testSplit(String test, String input, int[] expected) {
+        Assertions.assertArrayEquals(expected, Lexer.split(input, 1));
+    }
+
+    private static Stream<Arguments> testSplit() {
+        return Stream.of(
+                Arguments.of("Forms", "(a) (b c)\n(d)", new int[] {0, 3, 9, 13}),
+                Arguments.of("Nested", "(a (b) c) d", new int[] {0, 9, 11}),
+                Arguments.of("String", "\"a b\" \"c\\n d\"", new int[] {0, 5, 13}),
+                Arguments.of("Bracket In String", "\"(\" a", new int[] {0, 3, 5}),
+                Arguments.of("Unterminated String", "a \"b c", new int[] {0, 1, 6}),
+                Arguments.of("Empty String", "a \"\" b", new int[] {0, 1, 6})
+        );
+    }
+
+    @Test
+    void testSplitLex() {
+        String input = "(print \"a b\") [x 1.5]\n(y)";
+        List<Token> tokens = new ArrayList<>();
+        int[] splits = Lexer.split(input, 1);
+        for (int i = 0; i + 1 < splits.length; i++) {
+            tokens.addAll(Lexer.lexPacked(input, splits[i], splits[i + 1]).toList());
+        }
+        Assertions.assertEquals(Lexer.lex(input), tokens);
+    }
+
+    @Test
+    void testCharClassTables() {
+        for (Lexer.CharClass charClass : Lexer.CharClass.values()) {
+            for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+                String input = String.valueOf((char) c);
+                Assertions.assertEquals(input.matches(charClass.getRegex()), charClass.matches((char) c),
+                        charClass + " @ " + c);
+            }
+        }
+    }
+
     /**
      * Tests that the input lexes to the (single) expected token if successful,
      * else throws a {@link ParseException} otherwise.
@@ -0,0 +1,55 @@
+package plc.interpreter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.stream.Stream;
+
+final class NumbersTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testArithmetic(String test, BigDecimal left, BigDecimal right) {
+        Assertions.assertAll(
+                () -> assertIdentical(left.add(right), Numbers.add(left, right)),
+                () -> assertIdentical(left.subtract(right), Numbers.subtract(left, right)),
+                () -> assertIdentical(left.multiply(right), Numbers.multiply(left, right)),
+                () -> assertIdentical(left.divide(right, 0, RoundingMode.HALF_EVEN), Numbers.divide(left, right)),
+                () -> assertIdentical(left.negate(), Numbers.negate(left))
+        );
+    }
+
+    private static Stream<Arguments> testArithmetic() {
+        return Stream.of(
+                Arguments.of("Small", new BigDecimal("7"), new BigDecimal("2")),
+                Arguments.of("Negative", new BigDecimal("-7"), new BigDecimal("2")),
+                Arguments.of("Round Half Even", new BigDecimal("5"), new BigDecimal("-2")),
+                Arguments.of("Round Half Odd", new BigDecimal("-3"), new BigDecimal("2")),
+                Arguments.of("Fractional", new BigDecimal("1.50"), new BigDecimal("2")),
+                Arguments.of("Negative Scale", new BigDecimal("1E+3"), new BigDecimal("3")),
+                Arguments.of("Overflow", new BigDecimal("999999999999999999"), new BigDecimal("999999999999999999")),
+                Arguments.of("Large", new BigDecimal("123456789012345678901234567890"), new BigDecimal("7"))
+        );
+    }
+
+    @Test
+    void testDivideByZero() {
+        Assertions.assertThrows(ArithmeticException.class, () -> Numbers.divide(BigDecimal.ONE, BigDecimal.ZERO));
+    }
+
+    @Test
+    void testCache() {
+        Assertions.assertSame(Numbers.valueOf(100), Numbers.add(Numbers.valueOf(99), BigDecimal.ONE));
+    }
+
+    private static void assertIdentical(BigDecimal expected, BigDecimal actual) {
+        Assertions.assertEquals(expected, actual);
+        Assertions.assertEquals(expected.scale(), actual.scale());
+    }
+
+}
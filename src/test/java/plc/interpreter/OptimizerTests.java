@@ -0,0 +1,72 @@
+package plc.interpreter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.stream.Stream;
+
+final class OptimizerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testOptimize(String test, String input, String expected, int eliminated) {
+        Optimizer optimizer = new Optimizer();
+        Assertions.assertEquals(parse(expected), optimizer.optimize(parse(input), scope()));
+        Assertions.assertEquals(eliminated, optimizer.getEliminated());
+    }
+
+    private static Stream<Arguments> testOptimize() {
+        return Stream.of(
+                Arguments.of("Nested", "(+ 1 2 (* 3 4))", "15", 5),
+                Arguments.of("Comparison", "(< 1 2)", "true", 2),
+                Arguments.of("Logical", "(and true (not false) (>= 2 1))", "true", 6),
+                Arguments.of("Fractional", "(+ 1.5 2)", "3.5", 2),
+                Arguments.of("Prefix", "(- 10 1 2 x)", "(- 7 x)", 2),
+                Arguments.of("Argument", "(print (* 2 3) x)", "(print 6 x)", 2),
+                Arguments.of("Not Constant", "(+ x 1 2)", "(+ x 1 2)", 0),
+                Arguments.of("Error", "(/ 1 0)", "(/ 1 0)", 0),
+                Arguments.of("Type Error", "(+ 1 \"a\")", "(+ 1 \"a\")", 0),
+                Arguments.of("Impure", "(list 1 2)", "(list 1 2)", 0),
+                Arguments.of("Shadowed", "(do (define + -) (+ 1 2))", "(do (define + -) (+ 1 2))", 0),
+                Arguments.of("Shadowed Boolean", "(do (set! true 1) (< 1 2))", "(do (set! true 1) (< 1 2))", 0)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRedefined(String test, String definition, String input) {
+        Scope scope = scope();
+        Parser.stream(new StringReader(definition)).forEachRemaining(new Interpreter(new PrintWriter(System.out), scope)::eval);
+        Assertions.assertEquals(parse(input), new Optimizer().optimize(parse(input), scope));
+    }
+
+    private static Stream<Arguments> testRedefined() {
+        return Stream.of(
+                Arguments.of("Set", "(set! + -)", "(+ 1 2)"),
+                Arguments.of("Defined", "(define x 1) (set! * +)", "(* 2 3)"),
+                Arguments.of("Boolean", "(set! true false)", "(not true)")
+        );
+    }
+
+    @Test
+    void testUndefined() {
+        Assertions.assertEquals(parse("(+ 1 2)"), new Optimizer().optimize(parse("(+ 1 2)"), new Scope(null)));
+    }
+
+    /**
+     * Returns a root scope with the standard library attached.
+     */
+    private static Scope scope() {
+        return new Interpreter(new PrintWriter(System.out), new Scope(null)).scope;
+    }
+
+    private static Ast parse(String input) {
+        return ((Ast.Term) Parser.parse(input)).getArgs().get(0);
+    }
+
+}
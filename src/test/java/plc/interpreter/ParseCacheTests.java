@@ -0,0 +1,124 @@
+package plc.interpreter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+final class ParseCacheTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testEncode(String test, Ast ast) {
+        Assertions.assertEquals(ast, ParseCache.decode(ByteBuffer.wrap(ParseCache.encode(ast))));
+    }
+
+    private static Stream<Arguments> testEncode() {
+        return Stream.of(
+                Arguments.of("Empty Term", new Ast.Term("source", Collections.emptyList())),
+                Arguments.of("Identifier", new Ast.Identifier("x")),
+                Arguments.of("Number", new Ast.NumberLiteral(new BigDecimal("-123.4500"))),
+                Arguments.of("Large Number", new Ast.NumberLiteral(new BigDecimal("123456789012345678901234567890e-5"))),
+                Arguments.of("String", new Ast.StringLiteral("Hello,\n\u00e9 World!")),
+                Arguments.of("Program", Parser.parse("(define x 1.5) (print x \"x\") [set! x (+ x 1)] (do (f) (g (h)))"))
+        );
+    }
+
+    @Test
+    void testDeepNesting() {
+        Ast ast = new Ast.Identifier("x");
+        for (int i = 0; i < 100_000; i++) {
+            ast = new Ast.Term("f", Arrays.asList(ast));
+        }
+        Ast decoded = ParseCache.decode(ByteBuffer.wrap(ParseCache.encode(ast)));
+        for (int i = 0; i < 100_000; i++) {
+            Assertions.assertEquals("f", ((Ast.Term) decoded).getName());
+            decoded = ((Ast.Term) decoded).getArgs().get(0);
+        }
+        Assertions.assertEquals(new Ast.Identifier("x"), decoded);
+    }
+
+    @Test
+    void testCache() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            ParseCache cache = new ParseCache(directory);
+            String input = "(print \"Hello, World!\") (+ 1 2.5)";
+            Ast ast = cache.parse(input);
+            Assertions.assertEquals(Parser.parse(input), ast);
+            Assertions.assertEquals(ast, cache.parse(input));
+            Assertions.assertEquals(ast, new ParseCache(directory).parse(input));
+            cache.parse("(print 1)");
+            Assertions.assertEquals(1, cache.getHits());
+            Assertions.assertEquals(2, cache.getMisses());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testCorrupted(String test, byte[] entry) throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            String input = "(print 1)";
+            Files.write(directory.resolve(ParseCache.key(input)), entry);
+            ParseCache cache = new ParseCache(directory);
+            Assertions.assertEquals(Parser.parse(input), cache.parse(input));
+            Assertions.assertEquals(1, cache.getMisses());
+            Assertions.assertEquals(Parser.parse(input), cache.parse(input));
+            Assertions.assertEquals(1, cache.getHits());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static Stream<Arguments> testCorrupted() {
+        byte[] header = {'W', 'H', 'S', 'P', 0, 0, 0, ParseCache.VERSION};
+        return Stream.of(
+                Arguments.of("Truncated Header", new byte[] {'W', 'H', 'S', 'P', 0, 0}),
+                Arguments.of("Negative Symbol Count", concat(header, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x0F)),
+                Arguments.of("Huge Symbol Count", concat(header, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x07)),
+                Arguments.of("Invalid Symbol", concat(header, (byte) 0, (byte) 1, (byte) 5))
+        );
+    }
+
+    private static byte[] concat(byte[] prefix, byte... suffix) {
+        byte[] bytes = Arrays.copyOf(prefix, prefix.length + suffix.length);
+        System.arraycopy(suffix, 0, bytes, prefix.length, suffix.length);
+        return bytes;
+    }
+
+    @Test
+    void testParseError() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            Assertions.assertThrows(ParseException.class, () -> new ParseCache(directory).parse("(print"));
+            try (Stream<Path> files = Files.list(directory)) {
+                Assertions.assertEquals(0, files.count());
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+}
@@ -6,9 +6,17 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 /**
@@ -125,6 +133,9 @@ final class ParserTests {
                 Arguments.of("Escape", "(print \"new\\bline\")", Arrays.asList(
                         new Ast.Term("print", Arrays.asList(new Ast.StringLiteral("new\bline")))
                 )),
+                Arguments.of("Multiple Escapes", "(print \"a\\tb\\rc\\nd\\be\\t\")", Arrays.asList(
+                        new Ast.Term("print", Arrays.asList(new Ast.StringLiteral("a\tb\rc\nd\be\t")))
+                )),
                 Arguments.of("Escape", "(print \"new\\rline\")", Arrays.asList(
                         new Ast.Term("print", Arrays.asList(new Ast.StringLiteral("new\rline")))
                 ))
@@ -170,6 +181,97 @@ final class ParserTests {
         test(input, Arrays.asList(expected));
     }
 
+    @Test
+    void testPath() throws IOException {
+        String input = "(let [x 10] (assert-equals? x \"ten\"))";
+        Path path = Files.createTempFile("parser", ".whisp");
+        try {
+            Files.write(path, input.getBytes(StandardCharsets.US_ASCII));
+            Assertions.assertEquals(Parser.parse(input), Parser.parse(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testStream(String test, String input) {
+        List<Ast> forms = new ArrayList<>();
+        Iterator<Ast> iterator = Parser.stream(new StringReader(input));
+        while (iterator.hasNext()) {
+            forms.add(iterator.next());
+        }
+        Assertions.assertEquals(((Ast.Term) Parser.parse(input)).getArgs(), forms);
+    }
+
+    private static Stream<Arguments> testStream() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Whitespace", "  \n "),
+                Arguments.of("Single", "(print \"Hello, World!\")"),
+                Arguments.of("Multiple", "(define x 1)\nx [set! x (+ x 1.5)] \"s\""),
+                Arguments.of("Nested", "(let [x 10] (assert-equals? x \"ten\"))")
+        );
+    }
+
+    @Test
+    void testStreamError() {
+        Iterator<Ast> iterator = Parser.stream(new StringReader("(print 1) (print"));
+        Assertions.assertEquals(Parser.parse("(print 1)"), new Ast.Term("source", Arrays.asList(iterator.next())));
+        Assertions.assertThrows(ParseException.class, iterator::next);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String input) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Ast expected;
+            try {
+                expected = Parser.parse(input);
+            } catch (ParseException e) {
+                ParseException actual = Assertions.assertThrows(ParseException.class, () -> Parser.parse(input, pool, 1));
+                Assertions.assertEquals(e.getMessage(), actual.getMessage());
+                Assertions.assertEquals(e.getIndex(), actual.getIndex());
+                return;
+            }
+            Assertions.assertEquals(expected, Parser.parse(input, pool, 1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Stream<Arguments> testParallel() {
+        return Stream.of(
+                Arguments.of("Single", "(print \"Hello, World!\")"),
+                Arguments.of("Multiple", "(define x 1)\nx [set! x (+ x 1.5)] \"s\" (print x)"),
+                Arguments.of("Nested", "(let [x 10] (assert-equals? x \"ten\")) (f (g (h)))"),
+                Arguments.of("Parse Error", "(print 1) (print 2) (print"),
+                Arguments.of("Lex Error", "(print 1) (print 2.5.5) (print 3)"),
+                Arguments.of("Unbalanced", "(print 1) ) (print 2)")
+        );
+    }
+
+    @Test
+    void testDeepNesting() {
+        int depth = 100_000;
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            input.append("(f ");
+        }
+        input.append("x");
+        for (int i = 0; i < depth; i++) {
+            input.append(")");
+        }
+        Ast ast = ((Ast.Term) Parser.parse(input.toString())).getArgs().get(0);
+        for (int i = 0; i < depth; i++) {
+            Assertions.assertEquals("f", ((Ast.Term) ast).getName());
+            Assertions.assertEquals(1, ((Ast.Term) ast).getArgs().size());
+            ast = ((Ast.Term) ast).getArgs().get(0);
+        }
+        Assertions.assertEquals(new Ast.Identifier("x"), ast);
+    }
+
     void test(String input, List<Ast> expected) {
         if (expected != null) {
             Ast ast = new Ast.Term("source", expected);
@@ -0,0 +1,64 @@
+package plc.interpreter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.stream.Stream;
+
+final class PipelineTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testRun(String test, String input, Object expected, String output) throws InterruptedException {
+        StringWriter writer = new StringWriter();
+        Pipeline pipeline = new Pipeline(new Interpreter(new PrintWriter(writer), new Scope(null)), 1);
+        Assertions.assertEquals(expected, pipeline.run(new StringReader(input)));
+        Assertions.assertEquals(output, writer.toString());
+    }
+
+    private static Stream<Arguments> testRun() {
+        return Stream.of(
+                Arguments.of("Empty", "", Interpreter.VOID, ""),
+                Arguments.of("Single", "(+ 1 2)", BigDecimal.valueOf(3), ""),
+                Arguments.of("Multiple", "(define x 1) (print x) (set! x (+ x 1)) (print x) x", BigDecimal.valueOf(2), String.format("1%n2%n"))
+        );
+    }
+
+    @Test
+    void testBackPressure() throws InterruptedException {
+        StringBuilder input = new StringBuilder("(define x 0)");
+        for (int i = 0; i < 10_000; i++) {
+            input.append("(set! x (+ x 1))");
+        }
+        input.append("x");
+        Pipeline pipeline = new Pipeline(new Interpreter(new PrintWriter(System.out), new Scope(null)), 4);
+        Assertions.assertEquals(BigDecimal.valueOf(10_000), pipeline.run(new StringReader(input.toString())));
+        Assertions.assertEquals(10_002, pipeline.getForms());
+    }
+
+    @Test
+    void testParseError() {
+        StringWriter writer = new StringWriter();
+        Pipeline pipeline = new Pipeline(new Interpreter(new PrintWriter(writer), new Scope(null)), 1);
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> pipeline.run(new StringReader("(print 1) (print 2) (print")));
+        Assertions.assertEquals(11, exception.getIndex());
+        Assertions.assertEquals(String.format("1%n2%n"), writer.toString());
+        Assertions.assertEquals(2, pipeline.getForms());
+    }
+
+    @Test
+    void testEvalError() {
+        Pipeline pipeline = new Pipeline(new Interpreter(new PrintWriter(System.out), new Scope(null)), 1);
+        Assertions.assertThrows(EvalException.class, () -> pipeline.run(new StringReader("(+ 1 x) (print 1)")));
+        Assertions.assertEquals(0, pipeline.getForms());
+    }
+
+}
@@ -0,0 +1,83 @@
+package plc.interpreter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class ResolverTests {
+
+    @Test
+    void testAddresses() {
+        Ast.Term ast = (Ast.Term) parse("(do (define x 1) (do (define y 2) (+ x y)))");
+        Resolver.resolve(ast);
+        Ast.Term inner = (Ast.Term) ast.getArgs().get(1);
+        Ast.Term sum = (Ast.Term) inner.getArgs().get(1);
+        Ast.Identifier x = (Ast.Identifier) sum.getArgs().get(0);
+        Ast.Identifier y = (Ast.Identifier) sum.getArgs().get(1);
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(Ast.UNRESOLVED, sum.depth),
+                () -> Assertions.assertEquals(1, x.depth),
+                () -> Assertions.assertEquals(0, x.slot),
+                () -> Assertions.assertEquals(0, y.depth),
+                () -> Assertions.assertEquals(0, y.slot)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testEval(String test, String input, Object expected) {
+        Ast ast = parse(input);
+        Resolver.resolve(ast);
+        Interpreter interpreter = new Interpreter(new PrintWriter(System.out, true), new Scope(null));
+        Assertions.assertEquals(expected, interpreter.eval(ast));
+    }
+
+    private static Stream<Arguments> testEval() {
+        return Stream.of(
+                Arguments.of("Nested", "(do (define x 1) (do (define y 2) (+ x y)))", BigDecimal.valueOf(3)),
+                Arguments.of("Shadowed", "(do (define x 1) (do (define x 2) x))", BigDecimal.valueOf(2)),
+                Arguments.of("Before Define", "(do (define x 1) (do (define y x) (define x 2) (+ x y)))", BigDecimal.valueOf(3)),
+                Arguments.of("Conditional Define", "(do (define x 1) (do (or true (define y 3)) (define z 2) (+ x z)))", BigDecimal.valueOf(3)),
+                Arguments.of("Loop", "(do (define i 0) (while (< i 10) (do (define next (+ i 1)) (set! i next))) i)", BigDecimal.TEN)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testEval")
+    void testParsed(String test, String input, Object expected) {
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            Interpreter interpreter = new Interpreter(new PrintWriter(System.out, true), new Scope(null), engine);
+            Assertions.assertEquals(expected, interpreter.eval(parse(input)), engine.toString());
+        }
+    }
+
+    @Test
+    void testDeepNesting() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            input.append("(do ");
+        }
+        input.append("x");
+        for (int i = 0; i < 100_000; i++) {
+            input.append(')');
+        }
+        Ast ast = parse("(do (define x 1) " + input + ")");
+        while (ast instanceof Ast.Term) {
+            List<Ast> args = ((Ast.Term) ast).getArgs();
+            ast = args.get(args.size() - 1);
+        }
+        Assertions.assertEquals(100_000, ((Ast.Identifier) ast).depth);
+    }
+
+    private static Ast parse(String input) {
+        return ((Ast.Term) Parser.parse(input)).getArgs().get(0);
+    }
+
+}
@@ -0,0 +1,74 @@
+package plc.interpreter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+final class ScriptServiceTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSubmit(String test, String input, Object expected, String output) throws Exception {
+        try (ScriptService service = new ScriptService(Interpreter.Engine.TREE, 1)) {
+            ScriptService.Result result = service.submit(input).get();
+            Assertions.assertEquals(expected, result.getValue());
+            Assertions.assertEquals(output, result.getOutput());
+        }
+    }
+
+    private static Stream<Arguments> testSubmit() {
+        return Stream.of(
+                Arguments.of("Empty", "", Interpreter.VOID, ""),
+                Arguments.of("Single", "(+ 1 2)", BigDecimal.valueOf(3), ""),
+                Arguments.of("Multiple", "(define x 1) (print x) (set! x (+ x 1)) (print x) x", BigDecimal.valueOf(2), String.format("1%n2%n"))
+        );
+    }
+
+    @Test
+    void testError() throws Exception {
+        try (ScriptService service = new ScriptService(Interpreter.Engine.TREE, 1)) {
+            ExecutionException parse = Assertions.assertThrows(ExecutionException.class, () -> service.submit("(print").get());
+            Assertions.assertTrue(parse.getCause() instanceof ParseException);
+            ExecutionException eval = Assertions.assertThrows(ExecutionException.class, () -> service.submit("(print 1) (+ 1 x)").get());
+            Assertions.assertTrue(eval.getCause() instanceof EvalException);
+            Assertions.assertEquals(String.format("2%n"), service.submit("(print 2)").get().getOutput());
+            Assertions.assertEquals(2, service.getFailed());
+        }
+    }
+
+    @Test
+    void testConcurrent() throws Exception {
+        try (ScriptService service = new ScriptService(Interpreter.Engine.COMPILED, 4)) {
+            List<CompletableFuture<ScriptService.Result>> futures = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                futures.add(service.submit("(define x " + i + ") (print x) (* x 2)"));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                ScriptService.Result result = futures.get(i).get();
+                Assertions.assertEquals(BigDecimal.valueOf(2 * i), result.getValue());
+                Assertions.assertEquals(String.format("%d%n", i), result.getOutput());
+            }
+            Assertions.assertEquals(10_000, service.getCompleted());
+            Assertions.assertTrue(service.getLatencyNanos(0.5) <= service.getLatencyNanos(0.99));
+            Assertions.assertTrue(service.getLatencyNanos(0.99) > 0);
+        }
+    }
+
+    @Test
+    void testBuckets() {
+        for (long nanos : new long[] {1, 7, 8, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE}) {
+            long upper = ScriptService.upperBound(ScriptService.bucket(nanos));
+            Assertions.assertTrue(nanos <= upper && upper - nanos <= nanos / 8, Long.toString(nanos));
+        }
+    }
+
+}
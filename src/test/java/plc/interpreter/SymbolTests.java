@@ -0,0 +1,39 @@
+package plc.interpreter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+final class SymbolTests {
+
+    @Test
+    void testInterned() {
+        Assertions.assertSame(Symbol.of("name"), Symbol.of(new String("name")));
+    }
+
+    @Test
+    void testSource() {
+        String source = "(print name)";
+        Assertions.assertAll(
+                () -> Assertions.assertSame(Symbol.of("print"), Symbol.of(source, 1, 5)),
+                () -> Assertions.assertSame(Symbol.of("name"), Symbol.of(source, 7, 4))
+        );
+    }
+
+    @Test
+    void testDistinct() {
+        Assertions.assertNotSame(Symbol.of("x"), Symbol.of("y"));
+    }
+
+    @Test
+    void testGrowth() {
+        Symbol[] symbols = new Symbol[10000];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = Symbol.of("growth-" + i);
+        }
+        for (int i = 0; i < symbols.length; i++) {
+            Assertions.assertSame(symbols[i], Symbol.of("growth-" + i));
+            Assertions.assertEquals("growth-" + i, symbols[i].getName());
+        }
+    }
+
+}